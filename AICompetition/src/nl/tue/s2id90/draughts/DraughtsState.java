@@ -1,7 +1,9 @@
 package nl.tue.s2id90.draughts;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Random;
 import nl.tue.s2id90.game.GameState;
 import org10x10.dam.game.BoardState;
 import org10x10.dam.game.Move;
@@ -65,9 +67,51 @@ public class DraughtsState implements GameState<Move> {
      **/
     final public static int WHITEFIELD = 5;
     
+    /**
+     * Random numbers used for the zobrist key: one for every (field, piece) pair.
+     * The seed is fixed, so keys are the same in every run (e.g. for opening books).
+     */
+    private static final long[][] ZOBRIST = new long[51][WHITEFIELD];
+    
+    /**
+     * Random number xor-ed into the zobrist key when white is to move.
+     */
+    private static final long ZOBRIST_WHITE_TO_MOVE;
+    
+    static {
+        Random random = new Random(2090L);
+        for(int f=1; f<ZOBRIST.length; f++) {
+            for(int p=WHITEPIECE; p<WHITEFIELD; p++) {
+                ZOBRIST[f][p] = random.nextLong();
+            }
+        }
+        ZOBRIST_WHITE_TO_MOVE = random.nextLong();
+    }
+    
+    /**
+     * Diagonal neighbours of every field: DIAGONALS[f][d] is the field next to
+     * f in direction d (up-left, up-right, down-left, down-right), 0 if that
+     * is off the board.
+     */
+    private static final int[][] DIAGONALS = new int[51][4];
+    
+    static {
+        int[] dr = {-1, -1, 1, 1};
+        int[] dc = {-1, 1, -1, 1};
+        for(int f=1; f<DIAGONALS.length; f++) {
+            int r = (f-1)/5, c = 2*((f-1)%5) + (r%2==0 ? 1 : 0);
+            for(int d=0; d<4; d++) {
+                int nr = r+dr[d], nc = c+dc[d];
+                if (nr>=0 && nr<10 && nc>=0 && nc<10)
+                    DIAGONALS[f][d] = nr*5 + nc/2 + 1;
+            }
+        }
+    }
+    
     private final BoardState bs;
     private final MoveGenerator moveGenerator = MoveGeneratorFactory.createMoveGeneratorInternational();
     private List<Move> moves=null;
+    private long zobristKey;
     
     /**
      * creates an initial  draughts state.
@@ -75,6 +119,7 @@ public class DraughtsState implements GameState<Move> {
     public DraughtsState() {
         bs = new BoardState(10,10);
         bs.setBegin();
+        zobristKey = computeZobristKey();
     }
     
     private DraughtsState(DraughtsState ds) {
@@ -84,6 +129,7 @@ public class DraughtsState implements GameState<Move> {
     /** creates a draughts state with a copy of the given BoardState. **/
     DraughtsState(BoardState bs) {
         this.bs = (BoardState) bs.clone();
+        zobristKey = computeZobristKey();
     }  
     
     /**
@@ -97,6 +143,49 @@ public class DraughtsState implements GameState<Move> {
         return moves;
     }
 
+    /**
+     * Captures are mandatory, so whenever a capture is possible all valid
+     * moves are captures. Note that MoveGenerator#generateForcedCaptures is not
+     * used here, because it does not find all captures. Moves are only
+     * generated if a quick scan of the board finds a possible capture.
+     * @return the valid moves in this state if they are captures, otherwise an
+     *         empty list.
+     */
+    public List<Move> getCaptures() {
+        if (moves==null && !canCapture())
+            return Collections.emptyList();
+        List<Move> valid = getMoves();
+        if (valid.isEmpty() || valid.get(0).isCapture())
+            return valid;
+        return Collections.emptyList();
+    }
+
+    /** @return whether or not the player to move can capture a piece. **/
+    private boolean canCapture() {
+        boolean white = bs.isWhiteToMove();
+        int man = white ? WHITEPIECE : BLACKPIECE, king = white ? WHITEKING : BLACKKING;
+        for(int f=1; f<=50; f++) {
+            int piece = bs.getPiece(f);
+            if (piece!=man && piece!=king) continue;
+            for(int d=0; d<4; d++) {
+                int n = DIAGONALS[f][d];
+                if (piece==king) { // kings fly over empty fields
+                    while (n!=0 && bs.getPiece(n)==EMPTY) n = DIAGONALS[n][d];
+                }
+                if (n!=0 && isOpponent(bs.getPiece(n), white)) {
+                    int behind = DIAGONALS[n][d];
+                    if (behind!=0 && bs.getPiece(behind)==EMPTY) return true;
+                }
+            }
+        }
+        return false;
+    }
+    
+    private static boolean isOpponent(int piece, boolean white) {
+        return white ? (piece==BLACKPIECE || piece==BLACKKING)
+                     : (piece==WHITEPIECE || piece==WHITEKING);
+    }
+
     /**
      *
      * @return
@@ -115,6 +204,7 @@ public class DraughtsState implements GameState<Move> {
     @Override
     public void doMove(Move m) {
         moves = null;      // invalidate moves
+        zobristKey ^= zobristDelta(m);
         bs.moveForward(m);
     }
 
@@ -125,9 +215,45 @@ public class DraughtsState implements GameState<Move> {
     @Override
     public void undoMove(Move m) {
         moves=null;             // invalidate cached moves
+        zobristKey ^= zobristDelta(m);
         bs.moveBackward(m);
     }
     
+    /** @return the bits of the zobrist key that change when m is done or undone. **/
+    private long zobristDelta(Move m) {
+        if (m.getFieldCount()==0) return 0L; // BoardState ignores empty moves
+        long delta = ZOBRIST[m.getBeginField()][m.getBeginPiece()]
+                   ^ ZOBRIST[m.getEndField()][m.getEndPiece()]
+                   ^ ZOBRIST_WHITE_TO_MOVE;
+        for(int i=0; i<m.getCaptureCount(); i++) {
+            // a king whose capture path crosses its begin field gets itself listed as captured there;
+            // BoardState just empties that field twice, so it must not be xor-ed twice here
+            if (m.getCapturedField(i)==m.getBeginField()) continue;
+            delta ^= ZOBRIST[m.getCapturedField(i)][m.getCapturedPiece(i)];
+        }
+        return delta;
+    }
+    
+    /** @return zobrist key computed from scratch over all fields. **/
+    private long computeZobristKey() {
+        int[] pieces = bs.getPieces();
+        long key = bs.isWhiteToMove() ? ZOBRIST_WHITE_TO_MOVE : 0L;
+        for(int f=1; f<pieces.length; f++) {
+            if (pieces[f]!=EMPTY) key ^= ZOBRIST[f][pieces[f]];
+        }
+        return key;
+    }
+    
+    /**
+     * Note that the key is only kept up to date by doMove, undoMove and reset;
+     * changing the array returned by getPieces() directly makes it invalid.
+     * @return zobrist key of this state, including the side to move.
+     */
+    @Override
+    public long getZobristKey() {
+        return zobristKey;
+    }
+    
     /**
      *
      * @return
@@ -149,6 +275,18 @@ public class DraughtsState implements GameState<Move> {
         return bs.getPieces();
     }
     
+    /** copies the state of the board into the given array instead of allocating a new one, 
+     * useful for code that inspects the board at every node of a search.
+     * Changing the array doesn't change this DraughtsState.
+     * @param pieces array of length at least 51 that receives the piece at every field
+     * @return pieces
+     * @see DraughtsState#getPieces()
+     */
+    public int[] getPieces(int[] pieces) {
+        for(int f=0; f<=50; f++) pieces[f] = bs.getPiece(f);
+        return pieces;
+    }
+    
     /** @return piece at field f 
      * @see DraughtsState#WHITEPIECE
      * @see DraughtsState#BLACKPIECE
@@ -187,6 +325,7 @@ public class DraughtsState implements GameState<Move> {
     public void reset() {
         moves=null;       // invalidate cached moves
         bs.setBegin();
+        zobristKey = computeZobristKey();
     }
 
     @Override
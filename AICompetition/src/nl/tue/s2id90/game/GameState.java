@@ -37,6 +37,13 @@ public interface GameState<Move> {
      */
     boolean isWhiteToMove();
 
+    /**
+     * @return a 64-bit hash key of this state that includes the side to move.
+     * Equal states have equal keys; the key is maintained incrementally by
+     * doMove and undoMove.
+     */
+    long getZobristKey();
+
     /**
      * resets state to initial game state.
      */
@@ -0,0 +1,61 @@
+package nl.tue.s2id90.group15;
+
+import java.util.Collections;
+import java.util.List;
+import nl.tue.s2id90.draughts.DraughtsState;
+import org10x10.dam.game.Move;
+
+/**
+ * Group 15 - Petar Galic & Filip Davidovic
+ */
+// headless multi-PV analysis: prints the best root moves with their exact values and principal variations for every depth,
+// with one line only the value and principal variation of the move that is played, after the search
+// the position is the start position followed by the given moves, in the notation of the game records of OfflineTournament (e.g. 32-28 19x28),
+// without moves the benchmark positions of SearchBenchmark are analysed
+// usage: java -cp <classpath> nl.tue.s2id90.group15.Analysis lines depth [move ...]
+public class Analysis {
+    public static void main(String[] args) {
+        int lines = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+        int depth = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        List<DraughtsState> positions = SearchBenchmark.positions();
+        if(args.length > 2) {
+            DraughtsState state = new DraughtsState();
+            for(int i = 2; i < args.length; i++) {
+                Move move = findMove(state, args[i]);
+                if(move == null) {
+                    System.err.println("no move " + args[i] + " in\n" + state);
+                    return;
+                }
+                state.doMove(move);
+            }
+            positions = Collections.singletonList(state);
+        }
+        BoomShakaLaka engine = new BoomShakaLaka(depth, 32, 1);
+        engine.multiPv = lines;
+        engine.tablebase = Tablebase.load();
+        engine.analysisListener = analysis -> {
+            analysis.forEach(System.out::println);
+            System.out.format("nodes=%d%n", engine.nodes);
+        };
+        for(DraughtsState position : positions) {
+            System.out.println(position);
+            engine.getMove(position.clone());
+            List<Move> pv = engine.getPrincipalVariation();
+            if(lines == 1 && !pv.isEmpty()) { // a normal search doesn't call the analysis listener
+                System.out.println(new AnalysisLine(engine.currentSearchDepth - 1, engine.getValue(), pv));
+                System.out.format("nodes=%d%n", engine.nodes);
+            }
+            System.out.println();
+        }
+    }
+
+    // the move of state that is written as notation, or null
+    private static Move findMove(DraughtsState state, String notation) {
+        for(Move move : state.getMoves()) {
+            if(move.getNotation().equals(notation)) {
+                return move;
+            }
+        }
+        return null;
+    }
+}
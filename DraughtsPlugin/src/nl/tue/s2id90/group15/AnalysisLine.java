@@ -0,0 +1,30 @@
+package nl.tue.s2id90.group15;
+
+import java.util.Collections;
+import java.util.List;
+import org10x10.dam.game.Move;
+
+/**
+ * Group 15 - Petar Galic & Filip Davidovic
+ */
+// one line of a multi-PV analysis of the root (see BoomShakaLaka.multiPv): a root move, its exact value from the point of view
+// of the player to move in the root, and the principal variation that starts with it
+class AnalysisLine {
+    final int depth; // depth of the iteration that computed the line
+    final int value;
+    final List<Move> moves; // the principal variation, moves.get(0) is the root move
+
+    AnalysisLine(int depth, int value, List<Move> moves) {
+        this.depth = depth;
+        this.value = value;
+        this.moves = Collections.unmodifiableList(moves);
+    }
+
+    @Override public String toString() {
+        StringBuilder line = new StringBuilder();
+        for(Move move : moves) {
+            line.append(' ').append(move.getNotation());
+        }
+        return String.format("depth %2d value %6d:%s", depth, value, line);
+    }
+}
@@ -0,0 +1,117 @@
+package nl.tue.s2id90.group15;
+
+/**
+ * Group 15 - Petar Galic & Filip Davidovic
+ */
+// precomputed geometry of the 10x10 board, so that the evaluation uses table lookups instead of field arithmetic
+// fields are numbered 1 to 50 row by row from the top (black's side), field 0 doesn't exist and is used as the "off the board" sentinel
+// sets of fields are stored as bitboards: field f is bit f of a long, bit 0 is never set so the sentinel is in no set
+final class BoardGeometry {
+    static final int FIELDS = 50;
+    static final int NONE = 0; // sentinel for a field that is off the board
+
+    // the four diagonal directions
+    static final int UP_LEFT = 0;
+    static final int UP_RIGHT = 1;
+    static final int DOWN_LEFT = 2;
+    static final int DOWN_RIGHT = 3;
+
+    static final int WHITE = 0; // index of white in the tables that depend on the colour
+    static final int BLACK = 1; // index of black in the tables that depend on the colour
+
+    static final int[][] NEIGHBOURS = new int[FIELDS + 1][4]; // [field][direction]: the diagonal neighbour, NONE if off the board
+    static final long[] ADJACENT = new long[FIELDS + 1]; // [field]: the set of the diagonal neighbours
+    static final int[][][] RAYS = new int[FIELDS + 1][4][]; // [field][direction]: all fields on the diagonal, closest first, terminated by NONE
+    static final long ALL_FIELDS; // the set of all fields
+    static final long EDGE_MASK; // fields in the top and bottom row and in the leftmost and rightmost column
+    static final long LONG_DIAGONAL; // the main diagonal from field 5 to field 46
+    // [colour][field]: fields that have to be empty for a man on field to be a runaway: for every two rows towards the promotion row
+    // the field straight ahead and the two fields diagonally in between
+    static final long[][] PROMOTION_PATH = new long[2][FIELDS + 1];
+
+    static {
+        int[] rowStep = {-1, -1, 1, 1};
+        int[] columnStep = {-1, 1, -1, 1};
+        long all = 0, edge = 0, diagonal = 0;
+        for(int f = 1; f <= FIELDS; f++) {
+            int row = row(f), column = column(f);
+            all |= bit(f);
+            if(row == 0 || row == 9 || column == 0 || column == 9) {
+                edge |= bit(f);
+            }
+            if(row + column == 9) {
+                diagonal |= bit(f);
+            }
+            for(int d = 0; d < 4; d++) {
+                NEIGHBOURS[f][d] = field(row + rowStep[d], column + columnStep[d]);
+                ADJACENT[f] |= bit(NEIGHBOURS[f][d]);
+                int length = 0;
+                while(field(row + (length + 1) * rowStep[d], column + (length + 1) * columnStep[d]) != NONE) {
+                    length++;
+                }
+                RAYS[f][d] = new int[length + 1]; // the last entry stays NONE
+                for(int i = 0; i < length; i++) {
+                    RAYS[f][d][i] = field(row + (i + 1) * rowStep[d], column + (i + 1) * columnStep[d]);
+                }
+            }
+        }
+        ALL_FIELDS = all;
+        EDGE_MASK = edge;
+        LONG_DIAGONAL = diagonal;
+        for(int f = 1; f <= FIELDS; f++) {
+            PROMOTION_PATH[WHITE][f] = promotionPath(f, -1);
+            PROMOTION_PATH[BLACK][f] = promotionPath(f, 1);
+        }
+    }
+
+    private BoardGeometry() {
+    }
+
+    /** @return the row of field, 0 is the top row. */
+    static int row(int field) {
+        return (field - 1) / 5;
+    }
+
+    /** @return the column of field, 0 is the leftmost column. */
+    static int column(int field) {
+        int row = row(field);
+        return 2 * ((field - 1) % 5) + (row % 2 == 0 ? 1 : 0);
+    }
+
+    /** @return the field at the given row and column, or NONE if that is off the board or a light square. */
+    static int field(int row, int column) {
+        if(row < 0 || row > 9 || column < 0 || column > 9 || (row + column) % 2 == 0) {
+            return NONE;
+        }
+        return row * 5 + column / 2 + 1;
+    }
+
+    /** @return the bitboard containing only field, the empty set for NONE. */
+    static long bit(int field) {
+        return field == NONE ? 0L : 1L << field;
+    }
+
+    /** @return whether or not field is in the set. */
+    static boolean contains(long set, int field) {
+        return (set >>> field & 1L) != 0; // bit 0 is never set, so NONE is in no set
+    }
+
+    // the fields that have to be empty for a man on field moving in the given row direction to run through to the promotion row
+    private static long promotionPath(int field, int rowStep) {
+        int forward = rowStep < 0 ? UP_LEFT : DOWN_LEFT; // forward and forward + 1 are the two directions towards the promotion row
+        long path = 0;
+        int row = row(field), column = column(field);
+        while(true) {
+            path |= bit(NEIGHBOURS[field][forward]) | bit(NEIGHBOURS[field][forward + 1]);
+            row += 2 * rowStep;
+            field = field(row, column);
+            if(field == NONE) { // the diagonal neighbours were in the promotion row
+                return path;
+            }
+            path |= bit(field);
+            if(row == 0 || row == 9) {
+                return path;
+            }
+        }
+    }
+}
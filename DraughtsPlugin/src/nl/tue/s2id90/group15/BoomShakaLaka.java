@@ -3,11 +3,15 @@ package nl.tue.s2id90.group15;
 import static java.lang.Integer.MAX_VALUE;
 import static java.lang.Integer.MIN_VALUE;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.Comparator;
-import java.util.Hashtable;
 import java.util.List;
 import java.util.Random;
+import java.util.function.Consumer;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import nl.tue.s2id90.draughts.DraughtsState;
 import nl.tue.s2id90.draughts.player.DraughtsPlayer;
 import org10x10.dam.game.Move;
@@ -15,66 +19,358 @@ import org10x10.dam.game.Move;
 /**
  * Group 15 - Petar Galic & Filip Davidovic
  */
-// "struct" stored in the hash table
-// stores the depth at which the node was when the field got hashed, the heuristic evaluation of the node & the best evaluated move in the node
-class HashFieldValue {
-    public static final int HASH_EXACT = 0; // flag that explains that the evaluation in this hash field is definite evaluation (no alpha/beta cut-offs)
-    public static final int HASH_BETA = 1; // flag that explains that there was a beta cut-off (evaluation is at least beta or higher)
-    public static final int HASH_ALPHA = 2; // flag that explains that there was an alpha cut-off (evaluation was not as high as alpha)
-    public int depth; // the greater the number the closer to the root
-    public int evaluation;
-    public Move bestMove;
-    public int flag;
-    
-    HashFieldValue(int depth, int evaluation, Move bestMove, int flag) {
-        this.depth = depth;
-        this.evaluation = evaluation;
-        this.bestMove = bestMove;
-        this.flag = flag;
-    }
-}
-
 public class BoomShakaLaka extends DraughtsPlayer {
     private int bestValue = 0;
     int maxSearchDepth;
     int currentSearchDepth; // used by iterative deepening 
     boolean isWhite;
     private final Random random = new Random();
-    private final long[][] zobristTable;
-    Hashtable<Long, HashFieldValue> transpositionTable = new Hashtable<>();
+    private final EvaluationAccumulator accumulator = new EvaluationAccumulator(); // follows the moves of the search, every search thread has its own
+    private final EvaluationAccumulator scratch = new EvaluationAccumulator(); // used by the full evaluation of a state
+    static final int EVALUATION_CACHE_SIZE = 256; // size of the evaluation cache of every search thread in KB
+    EvaluationCache evaluationCache = new EvaluationCache(EVALUATION_CACHE_SIZE); // evaluations of the search by zobrist hash, null switches it off
+    private final long blackPerspectiveKey; // xor-ed into the hash when we play black, evaluations are stored from our point of view
+    final TranspositionTable transpositionTable;
+    
+    // lazy SMP: the helpers search the same root on their own threads and only communicate through the shared transposition table
+    // the main thread (the one calling getMove) decides which move is played
+    private final BoomShakaLaka[] helpers;
+    private final ExecutorService helperThreads;
+    
+    // search options, they can be switched off to compare the node counts (see SearchBenchmark)
+    boolean principalVariationSearch = true; // search all but the first move with a zero window
+    boolean aspirationWindows = true; // start every iteration with a small window around the value of the previous iteration
+    static final int ASPIRATION_WINDOW = 4; // initial half width of the aspiration window
+    static final int MAX_ASPIRATION_WINDOW = 256; // windows wider than this are replaced by the full window
+    final boolean mtdf; // every iteration converges on the value with zero window searches (MTD(f)) instead of using an aspiration window
+    boolean lateMoveReductions = true; // search quiet moves late in the ordering less deep
+    boolean futilityPruning = true; // skip quiet moves near the leaves when the evaluation is too far outside of the window
+    boolean razoring = true; // search nodes near the leaves one ply less deep when the evaluation is far outside of the window
+    boolean endgameRecognizers = true; // give king endings that EndgameRecognizer knows their exact value instead of searching them
+    boolean singleReplyExtensions = true; // play a move that is the only legal move without using depth, see MAX_SINGLE_REPLY_EXTENSIONS
+    static final int MAX_SINGLE_REPLY_EXTENSIONS = 16; // most single replies on one path that don't use depth, so a path always ends
+    boolean mobilityEvaluation = true; // add the difference in quiet moves between us and the opponent to the evaluation, see mobility
+    static final int MOBILITY_DIVISOR = 4; // this many quiet moves more than the opponent are worth one point of the evaluation
+    // the mobility of the men that a lazy evaluation allows for, so mobility is only counted for stand pats near the window, where it can
+    // change the result; it is not a strict bound (that would be half a point per man), but on the benchmark positions no lazy result was
+    // off by more
+    static final int LAZY_MOBILITY_MARGIN = 2;
+    boolean lazyEvaluation = true; // skip the positional terms of the stand pat evaluation when the cheap terms are far enough outside of the window
+    static final int LMR_MIN_DEPTH = 3; // late move reductions are only done with at least this much depth left
+    static final int LMR_MIN_MOVE = 3; // the first moves in the ordering are never reduced
+    static final int LMR_REDUCTION = 1; // number of plies a late move is reduced
+    static final int[] FUTILITY_MARGIN = {0, 4, 8}; // per remaining depth, futility pruning is only done with at most 2 plies left
+    static final int[] RAZOR_MARGIN = {0, 8, 12, 16}; // per remaining depth, razoring is only done with at most 3 plies left
+    long nodes; // number of nodes visited in the last call to getMove
+    long rootSearches; // number of calls to alphaBeta in the last call to getMove: aspiration re-searches and MTD(f) passes included
+    final long[] iterationNodes = new long[MAX_DEPTH + 1]; // [depth]: nodes of the completed iteration of that depth in the last call to getMove
+    final long[] iterationSearches = new long[MAX_DEPTH + 1]; // [depth]: calls to alphaBeta of the completed iteration of that depth
+    private final MoveOrdering moveOrdering = new MoveOrdering(); // killer and history tables of this search thread
+    int ply; // distance of the current node from the root
+    private int extensions; // number of single replies on the path to the current node that didn't use depth
+    // multi-PV analysis: every iteration searches the root once per line, each time without the root moves of the lines before it,
+    // so the best multiPv root moves all get an exact value and a principal variation instead of only the best one
+    // the lines share the transposition table, so the positions that the first line searched are mostly answered from the table later on
+    int multiPv = 1; // number of root moves that get an exact value, 1 is a normal search
+    Consumer<List<AnalysisLine>> analysisListener; // gets the lines of every completed iteration of a multi-PV search, or null
+    private List<AnalysisLine> analysis = new ArrayList<>(); // the lines of the last completed iteration, best first
+    private final List<Move> excludedRootMoves = new ArrayList<>(); // root moves of the lines that the current iteration already has
+    int quiescenceNodeLimit = 2000; // maximum number of nodes of one quiescence search, 0 turns quiescence search off
+    private int quiescenceNodesLeft; // nodes the current quiescence search may still visit
+    
+    public static final int MAX_DEPTH = 64; // maximum depth of iterative deepening, the quiescence search can go deeper
+    // triangular principal variation table: pv[ply] is the best line found from the node at ply, pvLength[ply] moves long
+    // a node copies the line of its child behind its own best move, so pv[0] ends up with the principal variation of the whole search
+    // the quiescence search doesn't record any moves
+    private final Move[][] pv = new Move[MAX_DEPTH + 1][MAX_DEPTH + 1];
+    private final int[] pvLength = new int[MAX_DEPTH + 1];
+    private final Move[] mtdfPv = new Move[MAX_DEPTH + 1]; // principal variation of the last MTD(f) pass that failed high
+    // the principal variation of the last completed iteration and the zobrist hashes of the positions in which its moves are played,
+    // its moves are searched first in the next iteration when the transposition table has lost them
+    private final Move[] lastPv = new Move[MAX_DEPTH + 1];
+    private final long[] lastPvKeys = new long[MAX_DEPTH + 1];
+    private int lastPvLength;
+    private final TimeManager timeManager;
+    
+    // pondering: after returning a move we keep searching the position we expect after the reply of the opponent, on the opponent's time
+    // the ponderer fills the shared transposition table, so when the opponent plays the expected move (a ponder hit)
+    // the first iterations of the next search are answered from the table and the search gets deeper in the same time
+    // note that in the AICompetition tool both players run in the same process, so pondering takes processor time from the opponent
+    boolean ponder = false; // switched on by MyDraughtsPlugin when its PONDER_PROPERTY is set
+    static final int PONDER_TIME_FACTOR = 4; // the ponderer stops by itself after this many move times, e.g. when the game is over
+    private final BoomShakaLaka ponderer; // searches the expected position between two moves, null for helpers
+    private ExecutorService ponderThread; // single daemon thread of the ponderer, created when pondering starts for the first time
+    private Future<?> ponderSearch; // the running ponder search, or null
+    private long ponderKey; // zobrist key of the position that is being pondered
+    int ponderHits; // number of moves for which the opponent played the move we expected
+    int ponderMisses; // number of moves for which the opponent played another move
+    OpeningBook book; // consulted before searching, null if there is no book (see OpeningBookBuilder)
+    // endgame tablebase: a position with few enough pieces gets its game theoretical value instead of being searched further
+    // the root is always searched, its moves get their values from the tablebase, so a won position is never played into a draw or a loss
+    // king endings that are not in the tablebase can still be known to EndgameRecognizer
+    Tablebase tablebase; // null if there is no tablebase (see TablebaseGenerator)
+    static final int KNOWN_WIN = 10000; // value of a position known to be won, the evaluation is added to prefer the better won positions
+    // value for the player to move of a position without moves, which is lost; the ply of the position is added, so that the search prefers
+    // the longest defence and the quickest win (the transposition table may return such a value from another ply, it stays a loss)
+    static final int GAME_LOST = -1000000;
+    private static final int UNKNOWN_VALUE = MIN_VALUE; // returned by knownValue for a position of which the value is not known
+    long tablebaseHits; // number of nodes that were answered by the tablebase in the last call to getMove
+    long recognizerHits; // number of nodes that were answered by EndgameRecognizer in the last call to getMove
+    // proof-number search: a PN2 solver (see ProofNumberSearch) runs next to the alpha-beta search on its own thread and tries to prove
+    // that the root is won; it needs no evaluation, so it finds forced wins through long capture combinations beyond our depth,
+    // and a proven winning move is played right away: the solver stops the alpha-beta search for it
+    boolean proofNumberSearch = false; // switched on by MyDraughtsPlugin when there is a processor for the solver
+    static final int SOLVER_NODES = 1 << 19; // nodes of the solver, about 20 MB that are allocated when it runs for the first time
+    static final int SOLVER_INNER_NODES = 1 << 14; // nodes of the second level of the solver
+    private ProofNumberSearch solver; // null until the solver runs for the first time
+    private ExecutorService solverThread; // single daemon thread of the solver
+    private PositionHistory solverHistory; // the game and the path of the solver
+    private volatile Move provenMove; // winning move of the root that the solver proved in the last call to getMove, or null
+    long solverNodes; // nodes in the store of the solver at the end of the last call to getMove
+    long lazyEvaluations; // number of stand pat evaluations in the last call to getMove that the cheap terms alone decided
+    long fullEvaluations; // number of stand pat evaluations in the last call to getMove that needed the positional terms as well
+    // repetitions and the move limit: a position that repeats a position of the game or of the search path is a draw, nobody made progress,
+    // and so is every position after the last move of the game when the game has a move limit (OfflineTournament stops after maxMove plies)
+    // the player follows the game from one call of getMove to the next to know the positions that were played and how many plies
+    static final int GAME_HISTORY = 256; // number of reversible positions of the game that are remembered for the repetition check
+    static final int DRAW = 0; // value of a draw
+    int moveLimit = 0; // plies after which the game ends in a draw, 0 if there is no limit; MyDraughtsPlugin sets it
+    int gamePly = -1; // plies played in the game before the root, -1 if unknown (then the move limit isn't used)
+    private final PositionHistory history = new PositionHistory(GAME_HISTORY + MAX_DEPTH + 64); // the game and the search path, captures are at most 40 more plies
+    private final PositionHistory gameHistory = new PositionHistory(GAME_HISTORY); // the positions of the game up to and including the root
+    private DraughtsState afterMove; // the position after the move we played last, to recognize the next position of the same game
+    private boolean afterMoveIrreversible; // whether or not the move we played last was a capture or a man move
+    private static final long START_KEY = new DraughtsState().getZobristKey();
+    private static final long[] FIRST_MOVE_KEYS = firstMoveKeys(); // keys of the positions after every first move of white, sorted
     
     /** boolean that indicates that the GUI asked the player to stop thinking. */
-    private boolean stopped;
+    private volatile boolean stopped;
 
     public BoomShakaLaka(int maxSearchDepth) {
+        this(maxSearchDepth, 32, 1);
+    }
+    
+    /** creates a player that searches every move to the given depth, unless the GUI stops it earlier.
+     *  @param transpositionTableSize size of the transposition table in MB, it is allocated once and reused for all moves and games
+     *  @param threads number of search threads, including the thread that calls getMove
+     */
+    public BoomShakaLaka(int maxSearchDepth, int transpositionTableSize, int threads) {
+        this(maxSearchDepth, 0, transpositionTableSize, threads);
+    }
+    
+    /** creates a player that manages its own time, see TimeManager.
+     *  @param maxSearchDepth iterative deepening never goes deeper than this, use MAX_DEPTH to let only the time limit the depth
+     *  @param moveTime time for one move in milliseconds, 0 to search every move to maxSearchDepth
+     *  @param transpositionTableSize size of the transposition table in MB, it is allocated once and reused for all moves and games
+     *  @param threads number of search threads, including the thread that calls getMove
+     */
+    public BoomShakaLaka(int maxSearchDepth, int moveTime, int transpositionTableSize, int threads) {
+        this(maxSearchDepth, moveTime, transpositionTableSize, threads, false);
+    }
+    
+    /** creates a player that manages its own time and searches every iteration with the given driver.
+     *  @param mtdf whether every iteration of iterative deepening is a series of zero window searches (MTD(f)) instead of
+     *              a search with an aspiration window
+     *  @see #BoomShakaLaka(int, int, int, int)
+     */
+    public BoomShakaLaka(int maxSearchDepth, int moveTime, int transpositionTableSize, int threads, boolean mtdf) {
         super("thumbnail.jpg");
         this.maxSearchDepth = maxSearchDepth;
-        this.zobristTable = new long[50][4];
-        for(int i = 0; i < 50; i++) {
-            for(int j = 0; j < 4; j++) {
-                this.zobristTable[i][j] = random.nextLong();
-            }
+        this.mtdf = mtdf;
+        this.timeManager = new TimeManager(moveTime);
+        this.transpositionTable = new TranspositionTable(transpositionTableSize);
+        this.blackPerspectiveKey = random.nextLong();
+        this.helpers = new BoomShakaLaka[Math.max(threads, 1) - 1];
+        for(int i = 0; i < helpers.length; i++) {
+            helpers[i] = new BoomShakaLaka(this, 0); // helpers are stopped by the main thread
+        }
+        this.ponderer = new BoomShakaLaka(this, PONDER_TIME_FACTOR * moveTime);
+        this.helperThreads = helpers.length == 0 ? null : Executors.newFixedThreadPool(helpers.length, r -> {
+            Thread t = new Thread(r, "BoomShakaLaka helper");
+            t.setDaemon(true); // helpers must never keep the tournament from exiting
+            return t;
+        });
+    }
+    
+    // creates a helper (or the ponderer) that shares the transposition table of the main player
+    // moveTime is the time after which it stops searching by itself, 0 if it is always stopped by the main thread
+    private BoomShakaLaka(BoomShakaLaka main, int moveTime) {
+        super("thumbnail.jpg");
+        this.maxSearchDepth = main.maxSearchDepth;
+        this.mtdf = main.mtdf;
+        this.transpositionTable = main.transpositionTable;
+        this.blackPerspectiveKey = main.blackPerspectiveKey;
+        this.timeManager = new TimeManager(moveTime);
+        this.helpers = new BoomShakaLaka[0];
+        this.helperThreads = null;
+        this.ponderer = null;
+        copyOptions(main);
+    }
+    
+    // makes this helper (or the ponderer) search with the same rules and options as main, so that the entries it writes into the shared
+    // transposition table mean the same as those of main; done again before every search, the options may change between searches
+    private void copyOptions(BoomShakaLaka main) {
+        principalVariationSearch = main.principalVariationSearch;
+        aspirationWindows = main.aspirationWindows;
+        lateMoveReductions = main.lateMoveReductions;
+        futilityPruning = main.futilityPruning;
+        razoring = main.razoring;
+        endgameRecognizers = main.endgameRecognizers;
+        singleReplyExtensions = main.singleReplyExtensions;
+        lazyEvaluation = main.lazyEvaluation;
+        mobilityEvaluation = main.mobilityEvaluation;
+        quiescenceNodeLimit = main.quiescenceNodeLimit;
+        multiPv = main.multiPv;
+        tablebase = main.tablebase;
+        moveLimit = main.moveLimit;
+        if(main.evaluationCache == null) {
+            evaluationCache = null;
+        } else if(evaluationCache == null) {
+            evaluationCache = new EvaluationCache(EVALUATION_CACHE_SIZE);
         }
     }
     
     @Override public Move getMove(DraughtsState s) {
-        Move bestMove = null;
-        isWhite = s.isWhiteToMove();
+        timeManager.start();
+        stopPondering(s);
+        followGame(s);
+        Move move = search(s);
+        if(move != null) {
+            afterMove = s.clone();
+            afterMove.doMove(move);
+            afterMoveIrreversible = isIrreversible(move);
+        }
+        if(ponder && move != null) {
+            startPondering(s, move);
+        }
+        timeManager.moveReturned();
+        return move;
+    }
+    
+    // updates gamePly and gameHistory for s, the position in which we have to move now
+    // s is a new game, the first position of a game for black, or the position after the reply to the move we played last;
+    // any other position (e.g. one that was set up by hand) starts a game of which we don't know the history
+    private void followGame(DraughtsState s) {
+        long key = s.getZobristKey();
+        Move reply = afterMove == null ? null : findMove(afterMove, key);
+        if(key == START_KEY) {
+            gamePly = 0;
+            gameHistory.clear();
+            gameHistory.push(key, true);
+        } else if(reply != null) { // the game goes on with our move and the reply of the opponent
+            if(gamePly >= 0) {
+                gamePly += 2;
+            }
+            if(!gameHistory.hasRoom(2)) {
+                gameHistory.dropOldest(GAME_HISTORY / 2);
+            }
+            gameHistory.push(afterMove.getZobristKey(), afterMoveIrreversible);
+            gameHistory.push(key, isIrreversible(reply));
+        } else {
+            gamePly = Arrays.binarySearch(FIRST_MOVE_KEYS, key) >= 0 ? 1 : -1; // black's first move
+            gameHistory.clear();
+            gameHistory.push(key, true);
+        }
+        if(moveLimit > 0 && gamePly >= moveLimit) { // the game goes on, so there is no move limit after all (e.g. in the GUI)
+            gamePly = -1;
+            transpositionTable.clear(); // it is full of draws because of the limit
+        }
+    }
+    
+    private static long[] firstMoveKeys() {
+        DraughtsState start = new DraughtsState();
+        List<Move> moves = start.getMoves();
+        long[] keys = new long[moves.size()];
+        for(int i = 0; i < keys.length; i++) {
+            start.doMove(moves.get(i));
+            keys[i] = start.getZobristKey();
+            start.undoMove(moves.get(i));
+        }
+        Arrays.sort(keys);
+        return keys;
+    }
+    
+    // the move that leads from state to the position with the given key, or null
+    private static Move findMove(DraughtsState state, long key) {
+        for(Move move : state.getMoves()) {
+            state.doMove(move);
+            boolean found = state.getZobristKey() == key;
+            state.undoMove(move);
+            if(found) {
+                return move;
+            }
+        }
+        return null;
+    }
+    
+    // whether or not move can never be undone: a capture or a man move
+    static boolean isIrreversible(Move move) {
+        return move.isCapture() || move.getBeginPiece() == DraughtsState.WHITEPIECE || move.getBeginPiece() == DraughtsState.BLACKPIECE;
+    }
+    
+    // finds the move to play in s within the time of the time manager
+    private Move search(DraughtsState s) {
+        stopped = false; // a stop that arrived after the previous move was already returned
+        nodes = 0;
+        rootSearches = 0;
+        Arrays.fill(iterationNodes, 0);
+        Arrays.fill(iterationSearches, 0);
+        tablebaseHits = 0;
+        recognizerHits = 0;
+        lazyEvaluations = 0;
+        fullEvaluations = 0;
+        lastPvLength = 0;
+        analysis = new ArrayList<>();
+        isWhite = s.isWhiteToMove(); // also for a forced or book move: pondering after it uses our colour
         bestValue = 0;
+        if(evaluationCache != null) {
+            evaluationCache.resetCounters();
+        }
+        List<Move> moves = s.getMoves();
+        if(moves.size() == 1 && analysisListener == null) { // a forced move (often a capture), there is nothing to think about, unless it is analysed
+            return moves.get(0);
+        }
+        Move bookMove = book == null ? null : book.getMove(s);
+        if(bookMove != null) { // the book move was found by a deeper search than we have time for now
+            return bookMove;
+        }
+        Move bestMove = null;
         currentSearchDepth = 1;
-        DraughtsNode node = new DraughtsNode(s); // the root of the search tree, current state
+        transpositionTable.newSearch(); // entries of earlier moves and games may be replaced from now on
+        moveOrdering.newSearch();
+        // the root of the search tree, a copy of the current state because an aborted search leaves its state somewhere in the tree
+        DraughtsState root = s.clone();
+        accumulator.reset(root);
+        history.copy(gameHistory);
+        Future<?> solverSearch = startSolver(s);
+        List<Future<?>> helperSearches = startHelpers(s);
         try {
             while(currentSearchDepth <= maxSearchDepth) { // iterative deepening
+                long iterationStart = nodes, searchesStart = rootSearches;
                 // compute bestMove and bestValue in a call to alphaBeta
-                bestValue = alphaBeta(node, MIN_VALUE, MAX_VALUE, currentSearchDepth);
+                bestValue = multiPv > 1 ? multiPvSearch(root, currentSearchDepth) : iterate(root, currentSearchDepth, bestValue);
+                iterationNodes[currentSearchDepth] = nodes - iterationStart;
+                iterationSearches[currentSearchDepth] = rootSearches - searchesStart;
 
                 // store the bestMove found uptill now
                 // NB this is not done in case of an AIStoppedException in alphaBeta()
-                bestMove  = node.getBestMove();
+                if(pvLength[0] > 0) { // an unstable MTD(f) iteration may end without a best move, then the one of the previous iteration stays
+                    bestMove = pv[0][0];
+                    savePrincipalVariation(s);
+                }
                 
                 currentSearchDepth++;
+                if(!timeManager.startNextIteration(bestMove)) { // the next iteration would most likely not finish in time
+                    break;
+                }
             }
         } catch (AIStoppedException ex) {  /* nothing to do */  }
+        stopHelpers(helperSearches);
+        stopSolver(solverSearch);
+        if(provenMove != null) { // the solver stopped the search, or it proved the win just before the search ended
+            bestValue = KNOWN_WIN;
+            return provenMove;
+        }
         
         if (bestMove == null) {
             System.err.println("no valid move found!");
@@ -84,6 +380,11 @@ public class BoomShakaLaka extends DraughtsPlayer {
         }
     } 
 
+    /** a multi-PV player shows its number of lines in its name, so that it can be told apart from the normal player in the GUI. */
+    @Override public String getName() {
+        return multiPv > 1 ? super.getName() + " " + multiPv + " lines" : super.getName();
+    }
+
     /** This method's return value is displayed in the AICompetition GUI.
      * 
      * @return the value for the draughts state s as it is computed in a call to getMove(s). 
@@ -91,12 +392,187 @@ public class BoomShakaLaka extends DraughtsPlayer {
     @Override public Integer getValue() { 
        return bestValue;
     }
+    
+    /** @return the lines of the last completed iteration of the last call to getMove in multi-PV mode, best first, empty in a normal search. */
+    List<AnalysisLine> getAnalysis() {
+        return analysis;
+    }
+    
+    /** @return the principal variation of the last completed iteration of the last call to getMove, starting with the move that was played. */
+    List<Move> getPrincipalVariation() {
+        List<Move> line = new ArrayList<>(lastPvLength);
+        for(int i = 0; i < lastPvLength; i++) {
+            line.add(lastPv[i]);
+        }
+        return line;
+    }
 
     /** Tries to make alphaBeta search stop. Search should be implemented such that it
      * throws an AIStoppedException when boolean stopped is set to true;
     **/
     @Override public void stop() {
        stopped = true; 
+       for(BoomShakaLaka helper : helpers) {
+           helper.stopped = true;
+       }
+       if(ponderer != null) { // e.g. the game was stopped in the GUI
+           ponderer.stopped = true;
+       }
+    }
+    
+    // starts pondering on the position after bestMove and the reply we expect, the expected reply is the second move of the principal
+    // variation, or else the best move that our own search stored in the transposition table for the position after bestMove
+    private void startPondering(DraughtsState s, Move bestMove) {
+        DraughtsState expected = s.clone();
+        expected.doMove(bestMove);
+        if(expected.isEndState()) {
+            return;
+        }
+        Move reply = null;
+        if(lastPvLength > 1 && lastPv[0] == bestMove) {
+            reply = lastPv[1];
+        } else {
+            long data = transpositionTable.probe(getZobristHash(expected));
+            reply = data == TranspositionTable.MISS ? null : TranspositionTable.getBestMove(data, expected.getMoves());
+        }
+        if(reply == null && expected.getMoves().size() == 1) { // a forced reply is never searched, but it is easy to predict
+            reply = expected.getMoves().get(0);
+        }
+        if(reply == null) {
+            return;
+        }
+        expected.doMove(reply);
+        if(expected.isEndState()) {
+            return;
+        }
+        if(ponderThread == null) {
+            ponderThread = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "BoomShakaLaka ponderer");
+                t.setDaemon(true); // pondering must never keep the tournament from exiting
+                return t;
+            });
+        }
+        ponderKey = expected.getZobristKey();
+        ponderer.stopped = false;
+        ponderer.copyOptions(this);
+        ponderer.history.copy(gameHistory); // the game continues with our move and the expected reply
+        ponderer.history.push(afterMove.getZobristKey(), afterMoveIrreversible);
+        ponderer.history.push(ponderKey, isIrreversible(reply));
+        ponderer.gamePly = gamePly < 0 ? -1 : gamePly + 2;
+        boolean white = isWhite;
+        ponderSearch = ponderThread.submit(() -> ponderer.helperSearch(expected, white, 1));
+    }
+    
+    // stops the ponder search, if any, and waits until it has really stopped; s is the state in which we have to move now
+    private void stopPondering(DraughtsState s) {
+        if(ponderSearch == null) {
+            return;
+        }
+        ponderer.stopped = true;
+        try {
+            ponderSearch.get();
+        } catch (InterruptedException | ExecutionException ex) {
+            System.err.println("ponder search failed: " + ex);
+        }
+        ponderSearch = null;
+        if(s.getZobristKey() == ponderKey) {
+            ponderHits++;
+        } else {
+            ponderMisses++;
+        }
+    }
+    
+    // starts every helper on its own copy of the root state
+    // helpers start at staggered depths, so that they are mostly searching a different depth than the main thread
+    private List<Future<?>> startHelpers(DraughtsState s) {
+        List<Future<?>> searches = new ArrayList<>();
+        for(int i = 0; i < helpers.length; i++) {
+            BoomShakaLaka helper = helpers[i];
+            DraughtsState copy = s.clone();
+            int startDepth = 1 + (i + 1) % 2;
+            helper.stopped = false;
+            helper.copyOptions(this);
+            helper.history.copy(gameHistory);
+            helper.gamePly = gamePly;
+            searches.add(helperThreads.submit(() -> helper.helperSearch(copy, isWhite, startDepth)));
+        }
+        return searches;
+    }
+    
+    // stops all helpers and waits until they have really stopped, so that they never search into the next move
+    private void stopHelpers(List<Future<?>> searches) {
+        for(BoomShakaLaka helper : helpers) {
+            helper.stopped = true;
+        }
+        for(Future<?> search : searches) {
+            try {
+                search.get();
+            } catch (InterruptedException | ExecutionException ex) {
+                System.err.println("helper search failed: " + ex);
+            }
+        }
+    }
+    
+    // starts the solver on a copy of the root state, when it is switched on; returns the running solver search, or null
+    private Future<?> startSolver(DraughtsState s) {
+        provenMove = null;
+        solverNodes = 0;
+        if(!proofNumberSearch) {
+            return null;
+        }
+        if(solver == null) {
+            solver = new ProofNumberSearch(SOLVER_NODES, SOLVER_INNER_NODES);
+            solverHistory = new PositionHistory(GAME_HISTORY + ProofNumberSearch.MAX_PLY + 2);
+            solverThread = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "BoomShakaLaka solver");
+                t.setDaemon(true); // the solver must never keep the tournament from exiting
+                return t;
+            });
+        }
+        solver.start();
+        solver.tablebase = tablebase; // the same rules as the alpha-beta search, the move limit is in maxPly
+        solver.endgameRecognizers = endgameRecognizers;
+        solver.moveLimit = moveLimit > 0 && gamePly >= 0;
+        solverHistory.copy(gameHistory);
+        DraughtsState copy = s.clone();
+        List<Move> moves = s.getMoves();
+        int maxPly = moveLimit > 0 && gamePly >= 0 ? moveLimit - gamePly : ProofNumberSearch.MAX_PLY;
+        return solverThread.submit(() -> {
+            int win = solver.findWin(copy, maxPly, solverHistory);
+            if(win >= 0) {
+                provenMove = moves.get(win);
+                stopped = true; // there is nothing left for the alpha-beta search to find
+            }
+        });
+    }
+    
+    // stops the solver search, if any, and waits until it has really stopped
+    private void stopSolver(Future<?> search) {
+        if(search == null) {
+            return;
+        }
+        solver.stop();
+        try {
+            search.get();
+        } catch (InterruptedException | ExecutionException ex) {
+            System.err.println("solver search failed: " + ex);
+        }
+        solverNodes = solver.getNodes();
+    }
+    
+    // iterative deepening of a helper, its results are only used through the transposition table
+    private void helperSearch(DraughtsState s, boolean white, int startDepth) {
+        isWhite = white;
+        timeManager.start();
+        moveOrdering.newSearch();
+        lastPvLength = 0;
+        accumulator.reset(s);
+        try {
+            for(currentSearchDepth = startDepth; currentSearchDepth <= maxSearchDepth; currentSearchDepth++) {
+                alphaBeta(s, MIN_VALUE, MAX_VALUE, currentSearchDepth);
+                savePrincipalVariation(s);
+            }
+        } catch (AIStoppedException ex) {  /* nothing to do */  }
     }
     
     /** returns random valid move in state s, or null if no moves exist. */
@@ -106,508 +582,612 @@ public class BoomShakaLaka extends DraughtsPlayer {
         return moves.isEmpty()? null : moves.get(0);
     }
     
-    // function that calculates the Zobrist hash value of a board state
-    // it does so in a two step process:
-    // 1. generate a 50x4 array of pseudorandom long numbers (64-bits), where 50 represents the number of squares on the board and 4 represents the four possible pieces (white/black kings and normal pieces). this is done in the constructor of this class
-    // 2. for each piece on the board XOR its positions random long number agains the current Zobrist hash value (h).
-    // for example, a white king's random number on the second square is stored in zorbistTable[1][0]
-    // indexes are the following:
-    // WHITEKING = 0, WHITEPIECE = 1, BLACKKING = 2, BLACKPIECE = 3
-    private long getZobristHash(int[] board) {
-        long h = 0L;
-        for(int i = 1; i < board.length; i++) {
-            if(board[i] != DraughtsState.EMPTY) {
-                int index = 0;
-                switch(board[i]) {
-                    case DraughtsState.WHITEKING:
-                        index = 0;
-                        break;
-                    case DraughtsState.WHITEPIECE:
-                        index = 1;
-                        break;
-                    case DraughtsState.BLACKKING:
-                        index = 2;
-                        break;
-                    case DraughtsState.BLACKPIECE:
-                        index = 3;
-                        break;
-                    default:
-                        break;
+    // the Zobrist hash of a state is maintained incrementally by DraughtsState itself (including the side to move)
+    // we only mix in the side we are playing, because the evaluations in the transposition table are from our point of view
+    private long getZobristHash(DraughtsState state) {
+        long h = state.getZobristKey();
+        return isWhite ? h : h ^ blackPerspectiveKey;
+    }
+    
+    // one iteration of iterative deepening with the driver chosen in the constructor, expected is the value of the previous iteration
+    private int iterate(DraughtsState root, int depth, int expected) throws AIStoppedException {
+        return mtdf ? mtdf(root, depth, expected) : aspirationSearch(root, depth, expected);
+    }
+    
+    // MTD(f): zero window searches that converge on the value of root from a first guess; a search that fails high proves that the value
+    // is at least its beta, one that fails low that it is below it, and its fail-soft value is the next guess
+    // the searches differ only in their window, so from the second one on most of the tree comes from the transposition table
+    // only a search that fails high leaves a best move at the root, so the principal variation of the last one that did is kept
+    private int mtdf(DraughtsState root, int depth, int guess) throws AIStoppedException {
+        int lower = -MAX_VALUE, upper = MAX_VALUE; // the value of root lies between lower and upper
+        int value = guess;
+        int mtdfPvLength = 0;
+        while(lower < upper) {
+            int beta = value == lower ? value + 1 : value;
+            value = alphaBeta(root, beta - 1, beta, depth);
+            if(value < beta) {
+                upper = value;
+            } else {
+                lower = value;
+                mtdfPvLength = pvLength[0];
+                System.arraycopy(pv[0], 0, mtdfPv, 0, mtdfPvLength);
+            }
+        }
+        System.arraycopy(mtdfPv, 0, pv[0], 0, mtdfPvLength);
+        pvLength[0] = mtdfPvLength;
+        return value;
+    }
+    
+    // one iteration of iterative deepening with an aspiration window around expected, the value of the previous iteration
+    // whenever the value falls outside of the window the window is widened on that side and the search is repeated
+    private int aspirationSearch(DraughtsState root, int depth, int expected) throws AIStoppedException {
+        if(!aspirationWindows || depth == 1) { // there is no previous value to center the window on
+            return alphaBeta(root, MIN_VALUE, MAX_VALUE, depth);
+        }
+        int alphaWindow = ASPIRATION_WINDOW, betaWindow = ASPIRATION_WINDOW;
+        while(true) {
+            int alpha = alphaWindow > MAX_ASPIRATION_WINDOW ? MIN_VALUE : (int) Math.max((long) expected - alphaWindow, MIN_VALUE);
+            int beta = betaWindow > MAX_ASPIRATION_WINDOW ? MAX_VALUE : (int) Math.min((long) expected + betaWindow, MAX_VALUE);
+            int value = alphaBeta(root, alpha, beta, depth);
+            if(value <= alpha && alpha != MIN_VALUE) { // fail low, the real value is at most alpha
+                alphaWindow *= 4;
+            } else if(value >= beta && beta != MAX_VALUE) { // fail high, the real value is at least beta
+                betaWindow *= 4;
+            } else {
+                return value;
+            }
+        }
+    }
+    
+    // one iteration of a multi-PV search: the root is searched once for every line, without the root moves of the lines before it,
+    // every line with an aspiration window around the value of the same line in the previous iteration
+    // the lines are sorted by value and passed to the analysis listener, pv[0] gets the line of the best move
+    private int multiPvSearch(DraughtsState root, int depth) throws AIStoppedException {
+        List<AnalysisLine> lines = new ArrayList<>();
+        int count = Math.min(multiPv, root.getMoves().size());
+        try {
+            for(int k = 0; k < count; k++) {
+                int value = iterate(root, depth, k < analysis.size() ? analysis.get(k).value : bestValue);
+                if(pvLength[0] == 0) { // an unstable MTD(f) search can end without a move, the remaining lines wait for the next iteration
+                    break;
                 }
-                h = h ^ zobristTable[i - 1][index];
+                List<Move> line = new ArrayList<>(pvLength[0]);
+                for(int i = 0; i < pvLength[0]; i++) {
+                    line.add(pv[0][i]);
+                }
+                lines.add(new AnalysisLine(depth, value, line));
+                excludedRootMoves.add(line.get(0));
             }
+        } finally {
+            excludedRootMoves.clear(); // also when the search is aborted, the next search starts with all root moves
+        }
+        if(lines.isEmpty()) {
+            pvLength[0] = 0;
+            return bestValue;
+        }
+        lines.sort((a, b) -> Integer.compare(b.value, a.value)); // a later line can come out better when the search is unstable
+        analysis = lines;
+        List<Move> best = lines.get(0).moves;
+        pvLength[0] = best.size();
+        for(int i = 0; i < best.size(); i++) {
+            pv[0][i] = best.get(i);
+        }
+        if(analysisListener != null) {
+            analysisListener.accept(lines);
         }
-        return h;
+        return lines.get(0).value;
     }
     
-    /** Implementation of alphaBeta that automatically chooses the white player
-     *  as maximizing player and the black player as minimizing player.
-     * @param rootNode contains DraughtsState and has field to which the best move can be assigned.
+    /** Implementation of alphaBeta for the player to move in root, which is us.
+     * The best move ends up as the first move of the principal variation, pv[0][0].
+     * @param root the state in which we have to move
      * @param alpha
      * @param beta
      * @param depth maximum recursion Depth
-     * @return the computed value of this rootNode
+     * @return the computed value of root
      * @throws AIStoppedException
      **/
-    int alphaBeta(DraughtsNode rootNode, int alpha, int beta, int depth) throws AIStoppedException {
-        return alphaBetaMax(rootNode, alpha, beta, depth);
-    }
-    
-    // method that orders possible moves by the following criteria:
-    // 1. evaluation of each of the states after making a move
-    // since this is an ordering for alphaBetaMin this method orders them in ascending order
-    List<Move> orderMovesMin(DraughtsState state, List<Move> possibleMoves) {
-        possibleMoves.sort(new Comparator<Move>() {
-            @Override
-            public int compare(Move m1, Move m2) {
-                state.doMove(m1);
-                int m1Eval = evaluate(state);
-                state.undoMove(m1);
-                state.doMove(m2);
-                int m2Eval = evaluate(state);
-                state.undoMove(m2);
-                
-                if(m1Eval == m2Eval) {
-                    return 0; // two states have an equal evaluation
-                } else if(m1Eval < m2Eval) {
-                    return 1; // first state has a lower evaluation than the second state
-                } else {
-                    return -1; // second state has a lower evaluation than the first state
-                }
-            }
-        });
-        return possibleMoves;
+    int alphaBeta(DraughtsState root, int alpha, int beta, int depth) throws AIStoppedException {
+        ply = 0; // an aborted search doesn't get the chance to walk back to the root
+        rootSearches++;
+        extensions = 0;
+        return negamax(root, Math.max(alpha, -MAX_VALUE), beta, depth); // -MIN_VALUE doesn't exist, so the window has to be negatable
     }
     
-    /** Does an alphaBeta computation with the given alpha and beta
-     * where the player that is to move in node is the minimizing player.
+    /** Does an alphaBeta computation with the given alpha and beta in negamax form: all values are from the point of view
+     * of the player to move in state, the value of a child is the negated value that the child returns with the negated window.
+     * The evaluation is from our point of view, it is negated in the nodes where the opponent is to move (see sideToMove).
+     * The search is fail-soft: a value at or below alpha is an upper bound of the real value, a value at or above beta a lower bound,
+     * and those bounds can be tighter than the window (MTD(f) needs that, see mtdf).
      * 
      * <p>Typical pieces of code used in this method are:
-     *     <ul> <li><code>DraughtsState state = node.getState()</code>.</li>
-     *          <li><code> state.doMove(move); .... ; state.undoMove(move);</code></li>
-     *          <li><code>node.setBestMove(bestMove);</code></li>
+     *     <ul> <li><code> doMove(state, move); ply++; .... ; ply--; undoMove(state, move);</code></li>
+     *          <li><code>updatePrincipalVariation(bestMove);</code></li>
      *          <li><code>if(stopped) { stopped=false; throw new AIStoppedException(); }</code></li>
      *     </ul>
+     * The state is changed during the search, but it is back in its original state when this method returns normally.
      * </p>
-     * @param node contains DraughtsState and has field to which the best move can be assigned.
+     * @param state the state of this node of the search tree
      * @param alpha
      * @param beta
      * @param depth  maximum recursion Depth
      * @return the compute value of this node
      * @throws AIStoppedException thrown whenever the boolean stopped has been set to true.
      */
-     int alphaBetaMin(DraughtsNode node, int alpha, int beta, int depth) throws AIStoppedException {
-        if (stopped) { stopped = false; throw new AIStoppedException(); } // check for the termination request by the GUI
-        if(depth == 0) { // check if the max search depth was reached. if it was, return the evaluation of the current state
-            return evaluate(node.getState());
+    int negamax(DraughtsState state, int alpha, int beta, int depth) throws AIStoppedException {
+        checkStop(); // check for the termination request by the GUI or the time manager
+        pvLength[ply] = 0;
+        if(ply > 0 && (history.isRepetition() || moveLimitReached(state))) { // a draw, whatever the rest of the tree looks like
+            return DRAW;
+        }
+        int knownValue = knownValue(state);
+        if(knownValue != UNKNOWN_VALUE) { // the exact value is known, nothing to search
+            return sideToMove(state) * knownValue;
+        }
+        if(depth == 0) { // check if the max search depth was reached. if it was, continue with the forced captures only
+            quiescenceNodesLeft = quiescenceNodeLimit;
+            return quiescence(state, alpha, beta);
+        }
+        nodes++;
+        // a single legal reply (mostly a compulsory capture) is no decision: it is played right away with the same depth left,
+        // without the transposition table and without ordering, so the depth goes to the nodes where there is something to choose
+        List<Move> possibleMoves = state.getMoves(); // all possible moves from the given state
+        if(singleReplyExtensions && ply > 0 && possibleMoves.size() == 1 && extensions < MAX_SINGLE_REPLY_EXTENSIONS && ply + depth < MAX_DEPTH) {
+            Move reply = possibleMoves.get(0);
+            doMove(state, reply);
+            ply++;
+            extensions++;
+            int value = -negamax(state, -beta, -alpha, depth);
+            extensions--;
+            ply--;
+            undoMove(state, reply);
+            if(value > alpha) {
+                updatePrincipalVariation(reply);
+            }
+            return value;
         }
-        DraughtsState state = node.getState();
+        // a root without the moves of the earlier lines of a multi-PV search has another value than the root, it doesn't use the table
+        boolean excluding = ply == 0 && !excludedRootMoves.isEmpty();
         // check whether the transposition table contains an entry for this state
-        long zobristHash = getZobristHash(state.getPieces()); // get the zobrist hash of the state
-        HashFieldValue transpositionTableValue = transpositionTable.get(zobristHash);
-        if(transpositionTableValue != null) {
-            if(transpositionTableValue.depth >= depth) { // there is an entry in the hash table for this state, check whether that value has a higher depth than the one at which this node is
-                switch(transpositionTableValue.flag) { // return the appropriate value and set the best move based on the flag
-                    case HashFieldValue.HASH_EXACT:
-                        node.setBestMove(transpositionTableValue.bestMove);
-                    case HashFieldValue.HASH_BETA:
-                        node.setBestMove(transpositionTableValue.bestMove);
+        long zobristHash = getZobristHash(state); // get the zobrist hash of the state
+        long transpositionTableValue = transpositionTable.probe(zobristHash);
+        Move hashMove = null; // best move of an earlier search of this state, it is searched first
+        if(transpositionTableValue != TranspositionTable.MISS) {
+            hashMove = TranspositionTable.getBestMove(transpositionTableValue, possibleMoves);
+            if(!excluding && TranspositionTable.getDepth(transpositionTableValue) >= depth) { // there is an entry in the hash table for this state, check whether that value has a higher depth than the one at which this node is
+                int evaluation = TranspositionTable.getEvaluation(transpositionTableValue);
+                switch(TranspositionTable.getFlag(transpositionTableValue)) { // bounds that don't fall outside of the window don't decide anything, then we need to search the node again
+                    case TranspositionTable.HASH_EXACT:
+                        setBestMove(hashMove);
+                        return evaluation; // return the stored evaluation
+                    case TranspositionTable.HASH_BETA: // the evaluation is a lower bound, only usable if it is not lower than beta
+                        if(evaluation >= beta) {
+                            setBestMove(hashMove);
+                            return evaluation;
+                        }
+                        break;
+                    case TranspositionTable.HASH_ALPHA: // the evaluation is an upper bound, only usable if it is not higher than alpha
+                        if(evaluation <= alpha) {
+                            return evaluation;
+                        }
+                        break;
                 }
-                return transpositionTableValue.evaluation;
             } // else first search the best move from this hash field 
         }
         
-        List<Move> possibleMoves = orderMovesMin(state, state.getMoves()); // all possible moves from the given state ordered in ascending order
+        if(excluding) {
+            possibleMoves.removeAll(excludedRootMoves);
+        }
+        if(hashMove == null) {
+            hashMove = lastPvMove(zobristHash, possibleMoves);
+        }
+        moveOrdering.order(possibleMoves, hashMove, ply); // most promising moves first
+        // selective pruning near the leaves, only in zero window nodes (outside of the principal variation) and when there are no captures
+        boolean futile = false;
+        int futileValue = 0; // what the quiet moves can get at most when they are futile
+        if(beta - alpha == 1 && depth < RAZOR_MARGIN.length && !possibleMoves.isEmpty() && !possibleMoves.get(0).isCapture() && (razoring || futilityPruning)) {
+            int staticEvaluation = sideToMove(state) * evaluateIncrementally(state);
+            if(razoring && staticEvaluation + RAZOR_MARGIN[depth] <= alpha) { // very likely to fail low, search it one ply less deep
+                depth--;
+                if(depth == 0) {
+                    quiescenceNodesLeft = quiescenceNodeLimit;
+                    return quiescence(state, alpha, beta);
+                }
+            }
+            // quiet moves won't get the evaluation above alpha
+            futile = futilityPruning && depth < FUTILITY_MARGIN.length && staticEvaluation + FUTILITY_MARGIN[depth] <= alpha;
+            futileValue = futile ? staticEvaluation + FUTILITY_MARGIN[depth] : 0;
+        }
         Move bestMove = null;
-        for(Move possibleMove : possibleMoves) {            
-            state.doMove(possibleMove); // advance from the current state with the selected move
-            int betaN = alphaBetaMax(new DraughtsNode(state), alpha, beta, depth - 1);
-            if(betaN < beta) {
-                beta = betaN;
-                bestMove = possibleMove;
+        int bestValue = GAME_LOST + ply; // the value when there are no moves: the player to move has lost
+        for(int i = 0; i < possibleMoves.size(); i++) {
+            Move possibleMove = possibleMoves.get(i);
+            boolean quiet = !possibleMove.isCapture() && !possibleMove.isPromotion() && possibleMove != hashMove && !moveOrdering.isKiller(possibleMove, ply);
+            if(futile && quiet && i > 0) { // futility pruning, the first move is always searched
+                bestValue = Math.max(bestValue, futileValue);
+                continue;
             }
-            state.undoMove(possibleMove); // unadvance from the derrived state with the selected move to get back to the current state
-            if(beta <= alpha) { // return beta and terminate since this node is not going to be reached
-                transpositionTable.put(zobristHash, new HashFieldValue(depth, alpha, null, HashFieldValue.HASH_ALPHA));
-                return alpha;
+            doMove(state, possibleMove); // advance from the current state with the selected move
+            ply++;
+            int value = alpha;
+            boolean fullDepth = true;
+            if(lateMoveReductions && quiet && depth >= LMR_MIN_DEPTH && i >= LMR_MIN_MOVE) {
+                // late move reduction: first try to prove with a reduced zero window search that this move is not better than the best move so far
+                value = -negamax(state, -alpha - 1, -alpha, depth - 1 - LMR_REDUCTION);
+                fullDepth = value > alpha; // it is better after all, so it needs to be searched to the full depth
             }
-        }
-        node.setBestMove(bestMove);
-        transpositionTable.put(zobristHash, new HashFieldValue(depth, beta, bestMove, HashFieldValue.HASH_EXACT));
-        return beta; 
-     }
-     
-     // method that orders possible moves by the following criteria:
-    // 1. evaluation of each of the states after making a move
-    // since this is an ordering for alphaBetaMax this method orders them in descending order
-    List<Move> orderMovesMax(DraughtsState state, List<Move> possibleMoves) {
-        possibleMoves.sort(new Comparator<Move>() {
-            @Override
-            public int compare(Move m1, Move m2) {
-                state.doMove(m1);
-                int m1Eval = evaluate(state);
-                state.undoMove(m1);
-                state.doMove(m2);
-                int m2Eval = evaluate(state);
-                state.undoMove(m2);
-                
-                if(m1Eval == m2Eval) {
-                    return 0; // two states have an equal evaluation
-                } else if(m1Eval < m2Eval) {
-                    return -1; // first state has a lower evaluation than the second state
+            if(fullDepth) {
+                if(i == 0 || !principalVariationSearch) {
+                    value = -negamax(state, -beta, -alpha, depth - 1);
                 } else {
-                    return 1; // second state has a lower evaluation than the first state
+                    // principal variation search: a zero window search only proves that this move is not better than the best move so far
+                    value = -negamax(state, -alpha - 1, -alpha, depth - 1);
+                    if(value > alpha && value < beta) { // it is better after all, search it again with the full window to get its value
+                        value = -negamax(state, -beta, -alpha, depth - 1);
+                    }
                 }
             }
-        });
-        return possibleMoves;
+            ply--;
+            undoMove(state, possibleMove); // unadvance from the derrived state with the selected move to get back to the current state
+            bestValue = Math.max(bestValue, value);
+            if(value > alpha) {
+                alpha = value;
+                bestMove = possibleMove;
+                updatePrincipalVariation(bestMove);
+            }
+            if(alpha >= beta) { // terminate since this node is not going to be reached, its value is at least bestValue
+                moveOrdering.cutoff(possibleMove, depth, ply);
+                if(!excluding) {
+                    transpositionTable.store(zobristHash, depth, bestValue, bestMove, TranspositionTable.HASH_BETA);
+                }
+                return bestValue;
+            }
+        }
+        // if none of the moves got above alpha, bestValue is only an upper bound of the real evaluation
+        if(!excluding) {
+            transpositionTable.store(zobristHash, depth, bestValue, bestMove, bestMove == null ? TranspositionTable.HASH_ALPHA : TranspositionTable.HASH_EXACT);
+        }
+        return bestValue; 
     }
     
-    int alphaBetaMax(DraughtsNode node, int alpha, int beta, int depth) throws AIStoppedException {
-        if (stopped) { stopped = false; throw new AIStoppedException(); } // check for the termination request by the GUI
-        if(depth == 0) { // check if the max search depth was reached. if it was, return the evaluation of the current state
-            return evaluate(node.getState());
+    // 1 when we are to move in state and -1 when the opponent is, the evaluation times this is the value for the player to move
+    private int sideToMove(DraughtsState state) {
+        return state.isWhiteToMove() == isWhite ? 1 : -1;
+    }
+    
+    // makes move the whole principal variation of the node at ply, used when the value comes from the transposition table
+    private void setBestMove(Move move) {
+        pv[ply][0] = move;
+        pvLength[ply] = move == null ? 0 : 1;
+    }
+    
+    // makes move followed by the principal variation of the child at ply + 1 the principal variation of the node at ply
+    private void updatePrincipalVariation(Move move) {
+        Move[] line = pv[ply], childLine = pv[ply + 1];
+        line[0] = move;
+        int childLength = pvLength[ply + 1];
+        System.arraycopy(childLine, 0, line, 1, childLength);
+        pvLength[ply] = childLength + 1;
+    }
+    
+    // keeps the principal variation of the iteration that just completed, from root, for the move ordering of the next iteration
+    private void savePrincipalVariation(DraughtsState root) {
+        DraughtsState state = root.clone();
+        lastPvLength = pvLength[0];
+        for(int i = 0; i < lastPvLength; i++) {
+            lastPv[i] = pv[0][i];
+            lastPvKeys[i] = getZobristHash(state);
+            state.doMove(lastPv[i]);
         }
-        DraughtsState state = node.getState();
-        // check whether the transposition table contains an entry for this state
-        long zobristHash = getZobristHash(state.getPieces()); // get the zobrist hash of the state
-        HashFieldValue transpositionTableValue = transpositionTable.get(zobristHash);
-        if(transpositionTableValue != null) {
-            if(transpositionTableValue.depth >= depth) { // there is an entry in the hash table for this state, check whether that value has a higher depth than the one at which this node is
-                switch(transpositionTableValue.flag) { // alpha cut-offs don't store the best move because "there is none". if the stored evaluation was an alpha cut-off we need to search the node again.
-                    case HashFieldValue.HASH_EXACT:
-                        node.setBestMove(transpositionTableValue.bestMove);
-                        return transpositionTableValue.evaluation; // return the stored evaluation
-                    case HashFieldValue.HASH_BETA:
-                        node.setBestMove(transpositionTableValue.bestMove);
-                        return transpositionTableValue.evaluation; // return the stored evaluation
-                }
-            } // else first search the best move from this hash field 
+    }
+    
+    // the move in moves that the last principal variation played at ply in the position with the given hash, or null
+    // the move ordering recognizes the hash move by identity, so the move object of moves is returned
+    private Move lastPvMove(long zobristHash, List<Move> moves) {
+        if(ply >= lastPvLength || lastPvKeys[ply] != zobristHash) {
+            return null;
         }
-        
-        List<Move> possibleMoves = orderMovesMax(state, state.getMoves()); // all possible moves from the given state ordered in descending order
-        Move bestMove = null;
-        for(Move possibleMove : possibleMoves) {
-            state.doMove(possibleMove); // advance from the current state with the selected move
-            int alphaN = alphaBetaMin(new DraughtsNode(state), alpha, beta, depth - 1);
-            if(alphaN > alpha) {
-                alpha = alphaN;
-                bestMove = possibleMove;
+        int index = moves.indexOf(lastPv[ply]);
+        return index < 0 ? null : moves.get(index);
+    }
+    
+    // throws an AIStoppedException when the GUI asked to stop or the hard deadline of the time manager has passed
+    private void checkStop() throws AIStoppedException {
+        if((nodes & (TimeManager.CHECK_INTERVAL - 1)) == 0 && timeManager.hardDeadlinePassed()) {
+            stopped = true;
+        }
+        if (stopped) { stopped = false; throw new AIStoppedException(); }
+    }
+    
+    // value of a state of the search from the tablebase or EndgameRecognizer, from our point of view, or UNKNOWN_VALUE if neither knows it
+    // the root is never probed, it needs a best move
+    private int knownValue(DraughtsState state) {
+        if(ply == 0) {
+            return UNKNOWN_VALUE;
+        }
+        int result = Tablebase.UNKNOWN;
+        if(tablebase != null && Long.bitCount(accumulator.whiteMen | accumulator.whiteKings | accumulator.blackMen
+                | accumulator.blackKings) <= tablebase.getMaxPieces()) {
+            result = tablebase.probe(accumulator.whiteMen, accumulator.whiteKings, accumulator.blackMen, accumulator.blackKings, state.isWhiteToMove());
+            if(result != Tablebase.DRAW && !finishesBeforeMoveLimit(tablebase.getLongestWin())) {
+                result = Tablebase.UNKNOWN;
+            }
+            if(result != Tablebase.UNKNOWN) {
+                tablebaseHits++;
+            }
+        }
+        if(result == Tablebase.UNKNOWN && endgameRecognizers) {
+            result = EndgameRecognizer.recognize(accumulator.whiteMen, accumulator.whiteKings, accumulator.blackMen, accumulator.blackKings,
+                    state.isWhiteToMove());
+            if(result != Tablebase.DRAW && !finishesBeforeMoveLimit(EndgameRecognizer.LONGEST_WIN)) {
+                result = Tablebase.UNKNOWN;
+            }
+            if(result != Tablebase.UNKNOWN) {
+                recognizerHits++;
+            }
+        }
+        if(result == Tablebase.UNKNOWN) {
+            return UNKNOWN_VALUE;
+        }
+        if(result == Tablebase.DRAW) {
+            return DRAW;
+        }
+        // the evaluation doesn't decide anything here, but it makes the search prefer won positions with more material
+        boolean won = (result == Tablebase.WIN) == (state.isWhiteToMove() == isWhite);
+        return (won ? KNOWN_WIN : -KNOWN_WIN) + evaluateIncrementally(state);
+    }
+    
+    // whether or not the game has ended at state because of the move limit, a state without moves is still lost
+    // whether or not a win that takes up to the given number of plies is over before the move limit ends the game in a draw
+    // the win or loss of a position that is too close to the limit is left to the search, which sees the draw
+    private boolean finishesBeforeMoveLimit(int plies) {
+        return moveLimit <= 0 || gamePly < 0 || moveLimit - (gamePly + ply) >= plies;
+    }
+    
+    private boolean moveLimitReached(DraughtsState state) {
+        return moveLimit > 0 && gamePly >= 0 && gamePly + ply >= moveLimit && !state.isEndState();
+    }
+    
+    // makes move in the searched state and keeps the evaluation accumulator and the position history in sync
+    private void doMove(DraughtsState state, Move move) {
+        state.doMove(move);
+        accumulator.doMove(move);
+        history.push(state.getZobristKey(), isIrreversible(move));
+    }
+    
+    // unmakes move in the searched state and keeps the evaluation accumulator and the position history in sync
+    private void undoMove(DraughtsState state, Move move) {
+        state.undoMove(move);
+        accumulator.undoMove(move);
+        history.pop();
+    }
+    
+    // evaluation of a state of the search from the evaluation cache or else from the accumulator, which only works because the search
+    // makes all moves through doMove and undoMove
+    // with assertions enabled (java -ea) it is cross-checked against the full evaluation of the state
+    private int evaluateIncrementally(DraughtsState state) {
+        int evaluation;
+        if(evaluationCache == null) {
+            evaluation = evaluate(accumulator);
+        } else {
+            long zobristHash = getZobristHash(state); // includes the side we play, the evaluation is from our point of view
+            evaluation = evaluationCache.probe(zobristHash);
+            if(evaluation == EvaluationCache.MISS) {
+                evaluation = evaluate(accumulator);
+                evaluationCache.store(zobristHash, evaluation);
             }
-            state.undoMove(possibleMove); // unadvance from the derrived state with the selected move to get back to the current state
-            if(alpha >= beta) { // return beta and terminate since this node is not going to be reached
-                transpositionTable.put(zobristHash, new HashFieldValue(depth, beta, bestMove, HashFieldValue.HASH_BETA));
-                return beta;
+        }
+        assert evaluation == evaluate(state) : "incremental evaluation out of sync with " + state;
+        return evaluation;
+    }
+    
+    // the evaluation of a state of the search for the player to move, only as exact as the window alpha, beta needs it
+    // the cheap terms only look up the pieces in the accumulator, the protected middle squares and mobility are the terms that walk the board;
+    // when the cheap terms are so far outside of the window that the middle squares and LAZY_MOBILITY_MARGIN can't bring the evaluation
+    // back into it,
+    // the bound on that side of the window is returned: the evaluation is at most high when high <= alpha and at least low when
+    // low >= beta (up to the mobility of the men beyond LAZY_MOBILITY_MARGIN), so it is a fail-soft value, which the search treats as an upper
+    // or lower bound like any other
+    private int evaluateLazily(DraughtsState state, int alpha, int beta) {
+        if(lazyEvaluation) {
+            int side = sideToMove(state);
+            long occupied = accumulator.whiteMen | accumulator.whiteKings | accumulator.blackMen | accumulator.blackKings;
+            long myMen = isWhite ? accumulator.whiteMen : accumulator.blackMen, myKings = isWhite ? accumulator.whiteKings : accumulator.blackKings;
+            long opponentKings = isWhite ? accumulator.blackKings : accumulator.whiteKings;
+            int material = isWhite ? accumulator.whiteCount - accumulator.blackCount : accumulator.blackCount - accumulator.whiteCount;
+            // from our point of view the evaluation lies between low and high
+            int cheap = cheapEvaluation(myMen, myKings, material, occupied, BoardGeometry.PROMOTION_PATH[isWhite ? BoardGeometry.WHITE : BoardGeometry.BLACK]);
+            int low = cheap, high = cheap + maxProtectedMiddleSquares(myMen, myKings);
+            if(mobilityEvaluation) { // the men get LAZY_MOBILITY_MARGIN, the kings can move much more, they get everything they can have
+                low -= LAZY_MOBILITY_MARGIN + Long.bitCount(opponentKings) * Mobility.MAX_KING_MOVES / MOBILITY_DIVISOR;
+                high += LAZY_MOBILITY_MARGIN + Long.bitCount(myKings) * Mobility.MAX_KING_MOVES / MOBILITY_DIVISOR;
+            }
+            int lowForSide = side > 0 ? low : -high, highForSide = side > 0 ? high : -low; // for the player to move
+            if(highForSide <= alpha || lowForSide >= beta) {
+                lazyEvaluations++;
+                assert lowForSide <= side * (evaluate(state) - mobility(accumulator)) && side * (evaluate(state) - mobility(accumulator)) <= highForSide
+                        : "lazy evaluation bounds are wrong for " + state;
+                return highForSide <= alpha ? highForSide : lowForSide;
             }
         }
-        node.setBestMove(bestMove);
-        transpositionTable.put(zobristHash, new HashFieldValue(depth, alpha, bestMove, HashFieldValue.HASH_EXACT));
-        return alpha; 
+        fullEvaluations++;
+        return sideToMove(state) * evaluateIncrementally(state);
+    }
+    
+    // whether or not the player to move in state has no quiet move, counted on the bitboards of the accumulator without generating moves
+    // (state.getMoves() at every quiet leaf would be far too expensive); together with no captures it means the player has lost
+    private boolean hasNoQuietMoves(DraughtsState state) {
+        long empty = BoardGeometry.ALL_FIELDS & ~(accumulator.whiteMen | accumulator.whiteKings | accumulator.blackMen | accumulator.blackKings);
+        if(state.isWhiteToMove()) {
+            return Mobility.menMoves(accumulator.whiteMen, empty, BoardGeometry.WHITE) + Mobility.kingMoves(accumulator.whiteKings, empty) == 0;
+        }
+        return Mobility.menMoves(accumulator.blackMen, empty, BoardGeometry.BLACK) + Mobility.kingMoves(accumulator.blackKings, empty) == 0;
     }
     
-    // Method that checks whether the key is contained in the array (only works for int arrays and keys)
-    private boolean arrayContains(int[] array, int key) {
-        for(int i = 0; i < array.length; i++) { // cycle through the whole array
-            if(array[i] == key) { // if the entry in the array equals the key
-                return true; // the array contains the key and the function returns true
+    // quiescence search in negamax form, used at the horizon of negamax
+    // as long as a capture is possible the captures are searched, because captures are mandatory and may turn the evaluation around completely
+    // a state without captures is quiet: its evaluation is returned right away (stand pat), unless it has no moves at all
+    // a capture can't be declined, so there is no stand pat in a state with captures
+    int quiescence(DraughtsState state, int alpha, int beta) throws AIStoppedException {
+        checkStop(); // check for the termination request by the GUI or the time manager
+        nodes++;
+        if(moveLimitReached(state)) { // captures can't repeat a position, but they can go past the end of the game
+            return DRAW;
+        }
+        if(quiescenceNodesLeft-- <= 0) { // the quiescence search is getting too big
+            return evaluateLazily(state, alpha, beta);
+        }
+        List<Move> captures = state.getCaptures();
+        if(captures.isEmpty()) {
+            assert hasNoQuietMoves(state) == state.getMoves().isEmpty() : "Mobility disagrees with the move generator in " + state;
+            if(hasNoQuietMoves(state)) { // a capture took the last piece or blocked the player to move: lost, as in negamax
+                return GAME_LOST + ply;
             }
+            return evaluateLazily(state, alpha, beta); // quiet state
         }
-        
-        return false; // return false if a match is not found
+        moveOrdering.order(captures, null, ply);
+        int bestValue = MIN_VALUE;
+        for(Move capture : captures) {
+            doMove(state, capture);
+            ply++;
+            int value = -quiescence(state, -beta, -alpha);
+            ply--;
+            undoMove(state, capture);
+            bestValue = Math.max(bestValue, value);
+            if(value > alpha) {
+                alpha = value;
+            }
+            if(alpha >= beta) {
+                return bestValue;
+            }
+        }
+        return bestValue;
     }
     
+    private static final int FIRST_MIDDLE_SQUARE = 16, LAST_MIDDLE_SQUARE = 35; // the squares in the middle that can be protected
+    private static final int MIDDLE_SQUARES = LAST_MIDDLE_SQUARE - FIRST_MIDDLE_SQUARE + 1;
+    private static final long MIDDLE_MASK = (-1L << FIRST_MIDDLE_SQUARE) & ~(-1L << (LAST_MIDDLE_SQUARE + 1)); // bitboard of the middle squares
+    
     // A method that checks whether the given square is protected
     // square is protected if:
     // - there is a piece on one side of its diagonal and an empty square on the other side of the diagoanl (this stands for either of the two diagonals)
-    // - the first piece on one side of the diagonal is a king, and there exists an empty square on the other side of its diagonal before any other piece (this stans for either of the two diagonals)
-    private boolean isSquareProtected(int[] pieces, int square) {
-        final int[] lower = new int[] {-5, 6, -4, 5};
-        final int[] higher = new int[] {-6, 5, -5, 4};
-        final int[] edgeSquares = new int[] {1, 2, 3, 4, 5, 6, 15, 16, 25, 26, 35, 36, 45, 46, 47, 48, 49, 50};
-        final int myPiece = isWhite ? DraughtsState.WHITEPIECE : DraughtsState.BLACKPIECE;
-        final int myKing = isWhite ? DraughtsState.WHITEKING : DraughtsState.BLACKKING;
-        
-        // initiate variables used by the while loop later to determine in which order to increment to go by the diagonal
-        boolean isLower = false;
-        int[] tar = higher;
-        if(square % 10 <= 5 && square % 10 >= 1) {
-            isLower = true;
-            tar = lower;
-        }
+    // - the square is empty and the first piece on one of its diagonals is a king (the diagonals are followed until the edge of the board, edge squares themselves are not inspected)
+    // empty, myMen and myKings are the bitboards of the empty squares, our men and our kings
+    private static boolean isSquareProtected(int square, long empty, long myMen, long myKings) {
+        int[] neighbours = BoardGeometry.NEIGHBOURS[square];
         
-        // check whether the square is protected with a piece from a square directly adjacent to it
-        if(pieces[square + tar[0]] == DraughtsState.EMPTY && pieces[square + tar[1]] == myPiece) {
+        // check whether the square is protected with a piece from a square directly adjacent to it (a neighbour off the board is NONE, which is in no set)
+        if(BoardGeometry.contains(empty, neighbours[BoardGeometry.UP_LEFT]) && BoardGeometry.contains(myMen, neighbours[BoardGeometry.DOWN_RIGHT])) {
             return true;
         }
-        if(pieces[square + tar[1]] == DraughtsState.EMPTY && pieces[square + tar[0]] == myPiece) {
+        if(BoardGeometry.contains(empty, neighbours[BoardGeometry.DOWN_RIGHT]) && BoardGeometry.contains(myMen, neighbours[BoardGeometry.UP_LEFT])) {
             return true;
         }
-        if(pieces[square + tar[2]] == DraughtsState.EMPTY && pieces[square + tar[3]] == myPiece) {
+        if(BoardGeometry.contains(empty, neighbours[BoardGeometry.UP_RIGHT]) && BoardGeometry.contains(myMen, neighbours[BoardGeometry.DOWN_LEFT])) {
             return true;
         }
-        if(pieces[square + tar[3]] == DraughtsState.EMPTY && pieces[square + tar[2]] == myPiece) {
+        if(BoardGeometry.contains(empty, neighbours[BoardGeometry.DOWN_LEFT]) && BoardGeometry.contains(myMen, neighbours[BoardGeometry.UP_RIGHT])) {
             return true;
         }
-        // for a square to be protected there needs to be a king on one side of its diagonal, and an empty square on the other 
-        // initiate the variables used to check for this
-        boolean hasKingMinus = false, hasEmptyMinus = false, hasKingPlus = false, hasEmptyPlus = false;
-        for(int i = 0; i < 4; i++) {
-            // if i % 2 == 0 cross check has been done and the variables are initialize again for the other cross check
-            if(i % 2 == 0) {
-                hasKingMinus = false;
-                hasEmptyMinus = false;
-                hasKingPlus = false;
-                hasEmptyPlus = false;
-            }
-            // initiate n so that we don't change square
-            int n = square;
-            // set flip flop to the previously defined diagonal order
-            boolean flipFlop = isLower;
-            while(!arrayContains(edgeSquares, n)) { // run the loop until an edge of a board is reached
-                if(pieces[n] == myKing) { // check whether the square on the diagonal contains our king
-                    // set the appropriate variable to true
-                    if(i % 2 == 0) {
-                        hasKingMinus = true;
-                    } else {
-                        hasKingPlus = true;
-                    }
-                    // break because the potential king on the other side cannot jump over this one
-                    break;
-                } else if(pieces[n] == DraughtsState.EMPTY) { // check whether the square on the diagonal contains an empty square
-                    // set the appropriate variable to true
-                    if(i % 2 == 0) {
-                        hasEmptyMinus = true;
-                    } else {
-                        hasEmptyPlus = true;
-                    }
-                } else {
-                    break;
+        // for a square to be protected by a king, the square has to be empty (the king can then land on it after a capture)
+        if(!BoardGeometry.contains(empty, square) || BoardGeometry.contains(BoardGeometry.EDGE_MASK, square)) {
+            return false;
+        }
+        for(int d = 0; d < 4; d++) { // follow the four diagonals until the edge or the first piece
+            int[] ray = BoardGeometry.RAYS[square][d];
+            for(int i = 0, n = ray[0]; n != BoardGeometry.NONE && !BoardGeometry.contains(BoardGeometry.EDGE_MASK, n); n = ray[++i]) {
+                if(BoardGeometry.contains(myKings, n)) { // the first piece on the diagonal is our king
+                    return true;
                 }
-                // go on the diagonal in the appropriate direction
-                if(flipFlop) {
-                    n += lower[i];
-                    flipFlop = false;
-                } else {
-                    n += higher[i];
-                    flipFlop = true;
+                if(!BoardGeometry.contains(empty, n)) { // any other piece blocks the diagonal
+                    break;
                 }
             }
-            // at the end of the traversal on one diagonal, check whether there is a king on on side and an empty space on the other (if yes the square is protected)
-            if(i % 2 == 1 && ((hasKingMinus && hasEmptyPlus) || (hasKingPlus && hasEmptyMinus))) {
-                return true;
-            }
         }
         // no matches found, return false
         return false;
     }
-    
-    // Method that returns the two squares either up or down (depending on direction) from the current one
-    int[] nextSquare(int current, String direction)  {
-        final int[] lower = new int[] {-5, -4, 5, 6}; // left up, right up, left down, right down (1 <= current % 10 <= 5)
-        final int[] higher = new int[] {-6, -5, 4, 5}; // left up, right up, left down, right down (6 <= current % 10 <= 9 || current % 10 == 0)
-        int[] ret = new int[2]; // array that is to be returned after required calculations
-        boolean isLower = current % 10 <= 5 && current % 10 >= 1; 
-        
-        switch(direction) { // depending on the direction parameter calculate the upper or lower two squares
-            case "up":
-                if(isLower) {
-                    ret[0] = current + lower[0];
-                    ret[1] = current + lower[1];
-                } else {
-                    ret[0] = current + higher[0];
-                    ret[1] = current + higher[1];
-                }
-                break;
-            case "down":
-                if(isLower) {
-                    ret[0] = current + lower[2];
-                    ret[1] = current + lower[3];
-                } else {
-                    ret[0] = current + higher[2];
-                    ret[1] = current + higher[3];
-                }
-                break;
-        }
-        
-        return ret;
-    }
 
-    /** A method that evaluates the given state. */
+    /** A method that evaluates the given state from scratch. The search uses the incrementally updated accumulator instead,
+     * this full evaluation is what it is checked against. */
     int evaluate(DraughtsState state) { 
-        int[] pieces = state.getPieces(); // array that contains the board state
-        int eval = 0; // variable used to calculate the heuristic evaluation of the state
-        ArrayList<Integer> blackKings = new ArrayList<>();
-        ArrayList<Integer> whiteKings = new ArrayList<>();
-        int lastBlackPiece = 0;
-        int lastWhitePiece = 0;
-        boolean firstWhite = false;
-        
-        // material difference with weights
-        int whiteCount = 0; // number of white's pieces
-        int blackCount = 0; // number of black's pieces
-        final int kingWeight = 2; // weight given to a king
-        final int normalWeight = 1; // weight given to a regular piece
-        final int[] squareWeights = new int[] {5, 5, 5, 5, 5, 5, 4, 4, 4, 4, 4, 3, 3, 3, 5, 5, 3, 2, 2, 4, 4, 2, 1, 3, 5, 5, 3, 1, 2, 4, 4, 2, 2, 3, 5, 5, 3, 3, 3, 4, 4, 4, 4, 4, 5, 5, 5, 5, 5, 5}; // the weight of each square
-        for(int i = 1; i < pieces.length; i++) { // loop that iterates through the whole board
-            switch (pieces[i]) { 
-                case DraughtsState.BLACKKING: // if the piece is a black king, add the king weight multiplied with the square weight to the black's piece count
-                    blackCount += squareWeights[i - 1] * kingWeight;
-                    blackKings.add(i); 
-                    break;
-                case DraughtsState.BLACKPIECE: // if the piece is a black piece, add the normal piece weight multiplied with the square weight to the black's piece count
-                    blackCount += squareWeights[i - 1] * normalWeight;
-                    break;
-                case DraughtsState.WHITEKING: // if the piece is a white king, add the king weight multiplied with the square weight to the white's piece count
-                    whiteCount += squareWeights[i - 1] * kingWeight;
-                    whiteKings.add(i);
-                    break;
-                case DraughtsState.WHITEPIECE: // if the piece is a white piece, add the normal piece weight multiplied with the square weight to the white's piece count
-                    whiteCount += squareWeights[i - 1] * normalWeight;
-                    break;
-                default:
-                    break;
-            }
-        }
-        
-        //number of protected pieces heuristics
-        int[] protectedPieces = new int[] {1, 2, 3, 4, 5, 6, 15, 16, 25, 26, 35, 36, 45, 46, 47, 48, 49, 50};
-        int protectedNumber = 0;
-        for (int i =0;i<protectedPieces.length;i++) {
-            switch(pieces[protectedPieces[i]]) {
-            case DraughtsState.BLACKKING:
-                    if (!isWhite) {
-                        protectedNumber += 1;
-                    }
-                    break;
-                case DraughtsState.BLACKPIECE:
-                    if (!isWhite) {
-                        protectedNumber += 1;
-                    }
-                    break;
-                case DraughtsState.WHITEKING:
-                    if (isWhite) {
-                        protectedNumber += 1;
-                    }
-                    break;
-                case DraughtsState.WHITEPIECE:
-                    if (isWhite) {
-                        protectedNumber += 1;
-                    }
-                    break;
-                default:
-                    break;
-            }
+        scratch.reset(state);
+        return evaluate(scratch);
+    }
+
+    // A method that evaluates the state described by the given accumulator from our point of view, it doesn't allocate anything
+    // the colour we play is resolved here once, the evaluation itself only sees our pieces and doesn't depend on the colour
+    private int evaluate(EvaluationAccumulator position) { 
+        long occupied = position.whiteMen | position.whiteKings | position.blackMen | position.blackKings; // bitboard of all pieces
+        if(isWhite) {
+            return evaluate(position.whiteMen, position.whiteKings, position.whiteCount - position.blackCount, occupied,
+                    BoardGeometry.PROMOTION_PATH[BoardGeometry.WHITE]) + mobility(position);
         }
-        
-        // number of squares protected in the middle
-        int protectedMiddleSquares = 0; // variable used to store the number of protected squares in the middle
-        for(int i = 16; i <= 35; i++) { // middle are squares from 16 to 35 (including 16 and 35)
-            if(isSquareProtected(pieces, i)) { // check whether the square is protected by calling the isSquareProtected function
-                protectedMiddleSquares++; // if the function returns true, the square is protected, so we can increment the number of protected squares
-            }
+        return evaluate(position.blackMen, position.blackKings, position.blackCount - position.whiteCount, occupied,
+                BoardGeometry.PROMOTION_PATH[BoardGeometry.BLACK]) + mobility(position);
+    }
+    
+    // mobility from our point of view: how many more quiet moves we have than the opponent, divided by MOBILITY_DIVISOR
+    // counted on the bitboards without generating moves (see Mobility), so it is cheap enough for every leaf and belongs to the cheap terms
+    private int mobility(EvaluationAccumulator position) {
+        if(!mobilityEvaluation) {
+            return 0;
         }
+        long empty = BoardGeometry.ALL_FIELDS & ~(position.whiteMen | position.whiteKings | position.blackMen | position.blackKings);
+        int white = Mobility.menMoves(position.whiteMen, empty, BoardGeometry.WHITE) + Mobility.kingMoves(position.whiteKings, empty);
+        int black = Mobility.menMoves(position.blackMen, empty, BoardGeometry.BLACK) + Mobility.kingMoves(position.blackKings, empty);
+        return (isWhite ? white - black : black - white) / MOBILITY_DIVISOR;
+    }
+    
+    // the evaluation for the player with the given men and kings, material is the weighted material difference with the opponent
+    // and promotionPaths are the promotion paths in the direction in which the men of the player move
+    private static int evaluate(long myMen, long myKings, int material, long occupied, long[] promotionPaths) { 
+        return cheapEvaluation(myMen, myKings, material, occupied, promotionPaths) + protectedMiddleSquares(myMen, myKings, occupied);
+    }
+    
+    // the terms of the evaluation that only look at the pieces themselves and their neighbours
+    private static int cheapEvaluation(long myMen, long myKings, int material, long occupied, long[] promotionPaths) {
+        //number of protected pieces heuristics (pieces on the edge of the board can't be captured)
+        int protectedNumber = Long.bitCount((myMen | myKings) & BoardGeometry.EDGE_MASK);
         
-        // runaway pieces (free path to becoming a king)
+        // runaway pieces (free path to becoming a king): all squares on the promotion path of the man have to be empty
         int runawayPieces = 0; // variable used to store the number of runaway pieces
-        int[] endSquares; // array that contains the five squares at the end of the board (uninitialized because the end squares depend on the side the player is playing)
-        int myPiece = isWhite ? DraughtsState.WHITEPIECE : DraughtsState.BLACKPIECE; // variable that stores the value of our piece
-        if(isWhite) { // if statement that assigns the appropriate values to endSquares (with respect to isWhite)
-            endSquares = new int[] {1, 2, 3, 4, 5};
-        } else {
-            endSquares = new int[] {46, 47, 48, 49, 50};
-        }
-        for(int i = 1; i < pieces.length; i++) { // loop that cycles through all the squares
-            if(pieces[i] == myPiece) { // only inspect our pieces (not kings, but normal pieces)
-                int n = i; // variable that stores the number of the square currently inspected in the while loop below
-                boolean reachedEnd = false; // boolean that is used to terminate the while loop below (set to true when the end of the board is reached, i.e. when n is at the end of the board)
-                while(!reachedEnd) { // while loop that inspects all the squares from the inspected piece to the end of the board (or until another piece is found on the path)
-                    int[] newSquares; // array that is used to store the two squares that are above or below n (depending on the side of the player)
-                    if(isWhite) { // if statement that popluates the newSquares array and increments n in the appropraite direction
-                        newSquares = nextSquare(n, "up"); // get two squares that are above n 
-                        n -= 10; // decrement n (move two rows up)
-                    } else {
-                        newSquares = nextSquare(n, "down"); // get two squares that are below n 
-                        n += 10; // increment n (move two rows down)
-                    }
-                    // check if any of the squares contains a piece (if yes the inspected piece is not runaway, so brek the loop)
-                    if(n >= 1 && n <= 50 && pieces[n] != DraughtsState.EMPTY) {
-                        break;
-                    }
-                    // at least one of the two squares has to be empty
-                    if((newSquares[0] >= 1 && newSquares[0] <= 50 && pieces[newSquares[0]] != DraughtsState.EMPTY) || (newSquares[1] >= 1 && newSquares[1] <= 50 && pieces[newSquares[1]] != DraughtsState.EMPTY)) {
-                        break;
-                    }
-                    
-                    // check for the termination of the while loop (reached the end of the board)
-                    if(!(n >= 1 && n <= 50) || arrayContains(endSquares, n)) {
-                        reachedEnd = true;
-                    }
-                }
-                // if that checks whether the while loop was terminated because the end of the board was reached
-                // if this is the case then we have inspected all the squares from the piece to the end of the board and found no piece on the way (the piece is runaway)
-                if(reachedEnd) {
-                    runawayPieces++; // increment the number of runaway pieces
-                }
+        for(long men = myMen; men != 0; men &= men - 1) { // only inspect our men (not kings), one bit at a time
+            if((occupied & promotionPaths[Long.numberOfTrailingZeros(men)]) == 0) {
+                runawayPieces++; // increment the number of runaway pieces
             }
         }
         
-        //trapped kings
-//        List<Move> availableMoves = state.getMoves();
-//        for(Move move: availableMoves) {
-//            if (move.isKingMove()) {
-//                if (isWhite) {
-//                    if (whiteKings.contains(move.getBeginPiece())) {
-//                        whiteKings.remove(move.getBeginPiece());
-//                    }
-//                }
-//                else {
-//                    if(blackKings.contains(move.getBeginPiece())) {
-//                        blackKings.remove(move.getBeginPiece());
-//                    }
-//                }
-//            }
-//        }
+        // trapped kings: kings that can't move and can't capture
+        long opponents = occupied & ~(myMen | myKings);
+        int trappedKings = myKings == 0 ? 0 : Mobility.trappedKings(myKings, opponents, BoardGeometry.ALL_FIELDS & ~occupied);
         
-        //formation heuristics
-        int numberOfPieces = 0;
-        if (isWhite) {
-            int row = lastWhitePiece/5; // get the furthest row that has white pieces on it
-            for (int i = 1; i <5 ;i++) { // check how many white pieces are on that row
-                switch(pieces[row*5+i]){
-                case DraughtsState.WHITEPIECE:
-                    numberOfPieces++;
-                    break;
-                case DraughtsState.WHITEKING:
-                    numberOfPieces++;
-                    break;
-                }
-                        
-            }
-        } else {
-            int row = lastBlackPiece/5; // get the furthest row that has a black piece on it
-            for (int i = 1; i <5 ;i++) {//check how many black pieces are on the furthest row
-                switch(pieces[row*5+i]){
-                case DraughtsState.BLACKPIECE:
-                    numberOfPieces++;
-                    break;
-                case DraughtsState.BLACKKING:
-                    numberOfPieces++;
-                    break;
-                }
-                        
-            }
-            
+        // the material difference minus the number of trapped kings
+        return material - trappedKings + protectedNumber + runawayPieces;
+    }
+    
+    // an upper bound of protectedMiddleSquares that doesn't walk the board: a king can protect any middle square,
+    // without kings only the middle squares next to our men can be protected
+    private static int maxProtectedMiddleSquares(long myMen, long myKings) {
+        if(myKings != 0) {
+            return MIDDLE_SQUARES;
         }
-        
-        
-        // calculate the final result and return 
-        if(isWhite) { // depending on the side the player is playing, calculate material difference and subtract the number of trapped kings
-            eval += (whiteCount - blackCount) - whiteKings.size();
-        } else {
-            eval += (blackCount - whiteCount) - blackKings.size();
+        long around = 0; // the fields next to our men
+        for(long men = myMen; men != 0; men &= men - 1) {
+            around |= BoardGeometry.ADJACENT[Long.numberOfTrailingZeros(men)];
         }
-        eval += protectedNumber + protectedMiddleSquares + runawayPieces;
-        
-        return eval; 
+        return Long.bitCount(around & MIDDLE_MASK);
+    }
+    
+    // number of squares protected in the middle, the expensive term of the evaluation
+    private static int protectedMiddleSquares(long myMen, long myKings, long occupied) { 
+        long empty = BoardGeometry.ALL_FIELDS & ~occupied; // bitboard of the empty squares
+        int protectedMiddleSquares = 0; // variable used to store the number of protected squares in the middle
+        for(int i = FIRST_MIDDLE_SQUARE; i <= LAST_MIDDLE_SQUARE; i++) { // middle are squares from 16 to 35 (including 16 and 35)
+            if(isSquareProtected(i, empty, myMen, myKings)) { // check whether the square is protected by calling the isSquareProtected function
+                protectedMiddleSquares++; // if the function returns true, the square is protected, so we can increment the number of protected squares
+            }
+        }
+        return protectedMiddleSquares;
     }
 }
@@ -0,0 +1,127 @@
+package nl.tue.s2id90.group15;
+
+import static nl.tue.s2id90.group15.BoardGeometry.*;
+
+/**
+ * Group 15 - Petar Galic & Filip Davidovic
+ */
+// cheap rules that give the exact value of some king endings without a tablebase and without searching them
+// the search spends most of its nodes in king endings, because a king has many more moves than a man
+// the rules only cover positions without men in which one side has a single king (the lone king) and the other side at most a few kings:
+// - when the side to move can capture the lone king it wins, a capture is compulsory and it is the last piece
+// - a lone king that has no move to a field where it can't be captured is lost
+// - when the side to move has a king move after which the lone king can't capture and has no safe move, it wins (a trap)
+// - one king against one king is a draw otherwise
+// - two kings against a lone king away from the edges and the long diagonal are a draw when they can't capture it or trap it,
+//   and the lone king holds the draw when it can go to such a field safely
+// all rules were checked against the complete 4 piece tablebase (see TablebaseGenerator), positions that they don't cover are UNKNOWN
+final class EndgameRecognizer {
+    static final int MAX_KINGS = 3; // most kings the strong side can have for the capture, trap and safe move rules
+    static final int LONGEST_WIN = 3; // plies until the lone king is captured: a trap, the lone king's move and the capture
+
+    private EndgameRecognizer() {
+    }
+
+    /** @return the value of the position for the side to move (Tablebase.WIN, DRAW or LOSS), or Tablebase.UNKNOWN if no rule applies. */
+    static int recognize(long whiteMen, long whiteKings, long blackMen, long blackKings, boolean whiteToMove) {
+        if((whiteMen | blackMen) != 0) {
+            return Tablebase.UNKNOWN;
+        }
+        long kings = whiteToMove ? whiteKings : blackKings; // kings of the side to move
+        long opponent = whiteToMove ? blackKings : whiteKings;
+        int count = Long.bitCount(kings), opponentCount = Long.bitCount(opponent);
+        if(count == 0 || opponentCount == 0 || Math.min(count, opponentCount) > 1 || Math.max(count, opponentCount) > MAX_KINGS) {
+            return Tablebase.UNKNOWN;
+        }
+        if(canCapture(kings, opponent)) { // it takes the last piece when the opponent has a lone king, otherwise the search has to see what follows
+            return opponentCount == 1 ? Tablebase.WIN : Tablebase.UNKNOWN;
+        }
+        if(count == 1 && !hasSafeMove(kings, opponent)) {
+            return Tablebase.LOSS;
+        }
+        if(opponentCount == 1 && hasTrap(kings, opponent)) {
+            return Tablebase.WIN;
+        }
+        if(count == 1 && opponentCount == 1) {
+            return Tablebase.DRAW;
+        }
+        if(count == 2 && isDrawingField(opponent)) { // no capture and no trap
+            return Tablebase.DRAW;
+        }
+        if(opponentCount == 2 && hasDrawingMove(kings, opponent)) {
+            return Tablebase.DRAW;
+        }
+        return Tablebase.UNKNOWN;
+    }
+
+    // whether or not one of kings can capture one of the victims, the only pieces on the board are kings and victims
+    private static boolean canCapture(long kings, long victims) {
+        long empty = ALL_FIELDS & ~(kings | victims);
+        for(long s = kings; s != 0; s &= s - 1) {
+            int from = Long.numberOfTrailingZeros(s);
+            for(int d = 0; d < 4; d++) {
+                int[] ray = RAYS[from][d];
+                int i = 0;
+                while(contains(empty, ray[i])) {
+                    i++;
+                }
+                if(contains(victims, ray[i]) && contains(empty, ray[i + 1])) { // ray[i] isn't NONE here, so ray[i + 1] exists
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // whether or not the lone king can move to a field where the kings can't capture it
+    private static boolean hasSafeMove(long lone, long kings) {
+        int from = Long.numberOfTrailingZeros(lone);
+        for(int d = 0; d < 4; d++) {
+            int[] ray = RAYS[from][d];
+            for(int i = 0; ray[i] != NONE && !contains(kings, ray[i]); i++) {
+                if(!canCapture(kings, bit(ray[i]))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // whether or not one of kings can move so that the lone king can't capture and has no safe move
+    private static boolean hasTrap(long kings, long lone) {
+        long occupied = kings | lone;
+        for(long s = kings; s != 0; s &= s - 1) {
+            int from = Long.numberOfTrailingZeros(s);
+            for(int d = 0; d < 4; d++) {
+                int[] ray = RAYS[from][d];
+                for(int i = 0; ray[i] != NONE && !contains(occupied, ray[i]); i++) {
+                    long moved = kings & ~bit(from) | bit(ray[i]);
+                    if(!canCapture(lone, moved) && !hasSafeMove(lone, moved)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    // whether or not the lone king can move to a drawing field where two kings can't capture or trap it
+    private static boolean hasDrawingMove(long lone, long kings) {
+        int from = Long.numberOfTrailingZeros(lone);
+        for(int d = 0; d < 4; d++) {
+            int[] ray = RAYS[from][d];
+            for(int i = 0; ray[i] != NONE && !contains(kings, ray[i]); i++) {
+                long moved = bit(ray[i]);
+                if(isDrawingField(moved) && !canCapture(kings, moved) && !hasTrap(kings, moved)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // whether or not the lone king is on a field where two kings can only win it by a capture or a trap
+    private static boolean isDrawingField(long lone) {
+        return (lone & (EDGE_MASK | LONG_DIAGONAL)) == 0;
+    }
+}
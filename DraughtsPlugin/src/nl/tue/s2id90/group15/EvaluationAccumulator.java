@@ -0,0 +1,103 @@
+package nl.tue.s2id90.group15;
+
+import nl.tue.s2id90.draughts.DraughtsState;
+import org10x10.dam.game.Move;
+
+/**
+ * Group 15 - Petar Galic & Filip Davidovic
+ */
+// the parts of the evaluation that only depend on which piece is on which field: the material weighted by the square weights
+// and bitboards (see BoardGeometry) of the men and kings of both colours, from which the king counts follow
+// the search keeps one accumulator in sync with the state it searches by passing every move it makes and unmakes,
+// a move only touches its begin and end field and the captured fields, so a leaf no longer has to look at all 50 fields
+// an accumulator follows the moves of one search thread, so it is never shared
+class EvaluationAccumulator {
+    private static final int KING_WEIGHT = 2; // weight given to a king
+    private static final int NORMAL_WEIGHT = 1; // weight given to a regular piece
+    private static final int[] SQUARE_WEIGHTS = {5, 5, 5, 5, 5, 5, 4, 4, 4, 4, 4, 3, 3, 3, 5, 5, 3, 2, 2, 4, 4, 2, 1, 3, 5, 5, 3, 1, 2, 4, 4, 2, 2, 3, 5, 5, 3, 3, 3, 4, 4, 4, 4, 4, 5, 5, 5, 5, 5, 5}; // the weight of each square
+    private static final int[][] PIECE_SQUARE = new int[5][BoardGeometry.FIELDS + 1]; // [piece][field]: weight of the piece on the field
+
+    static {
+        for(int f = 1; f <= BoardGeometry.FIELDS; f++) {
+            PIECE_SQUARE[DraughtsState.WHITEPIECE][f] = SQUARE_WEIGHTS[f - 1] * NORMAL_WEIGHT;
+            PIECE_SQUARE[DraughtsState.BLACKPIECE][f] = SQUARE_WEIGHTS[f - 1] * NORMAL_WEIGHT;
+            PIECE_SQUARE[DraughtsState.WHITEKING][f] = SQUARE_WEIGHTS[f - 1] * KING_WEIGHT;
+            PIECE_SQUARE[DraughtsState.BLACKKING][f] = SQUARE_WEIGHTS[f - 1] * KING_WEIGHT;
+        }
+    }
+
+    int whiteCount; // white's material, every piece weighted with its square weight
+    int blackCount; // black's material, every piece weighted with its square weight
+    long whiteMen; // bitboard of the white men
+    long whiteKings; // bitboard of the white kings
+    long blackMen; // bitboard of the black men
+    long blackKings; // bitboard of the black kings
+    private final int[] pieces = new int[BoardGeometry.FIELDS + 1]; // scratch copy of the board used by reset
+
+    /** recomputes everything from scratch for the given state. */
+    void reset(DraughtsState state) {
+        whiteCount = 0;
+        blackCount = 0;
+        whiteMen = 0;
+        whiteKings = 0;
+        blackMen = 0;
+        blackKings = 0;
+        state.getPieces(pieces);
+        for(int f = 1; f <= BoardGeometry.FIELDS; f++) {
+            toggle(pieces[f], f, 1);
+        }
+    }
+
+    /** updates the accumulator for move, which has just been done in the state. */
+    void doMove(Move move) {
+        if(move.getFieldCount() == 0) { // the board ignores empty moves as well
+            return;
+        }
+        toggle(move.getBeginPiece(), move.getBeginField(), -1);
+        for(int i = 0; i < move.getCaptureCount(); i++) {
+            if(move.getCapturedField(i) != move.getBeginField()) { // a king whose capture path crosses its begin field is listed as captured there itself
+                toggle(move.getCapturedPiece(i), move.getCapturedField(i), -1);
+            }
+        }
+        toggle(move.getEndPiece(), move.getEndField(), 1); // the end piece differs from the begin piece when the move promotes
+    }
+
+    /** updates the accumulator for move, which has just been undone in the state. */
+    void undoMove(Move move) {
+        if(move.getFieldCount() == 0) {
+            return;
+        }
+        toggle(move.getEndPiece(), move.getEndField(), -1);
+        for(int i = 0; i < move.getCaptureCount(); i++) {
+            if(move.getCapturedField(i) != move.getBeginField()) {
+                toggle(move.getCapturedPiece(i), move.getCapturedField(i), 1);
+            }
+        }
+        toggle(move.getBeginPiece(), move.getBeginField(), 1);
+    }
+
+    // adds (sign 1) or removes (sign -1) piece on field
+    private void toggle(int piece, int field, int sign) {
+        long bit = BoardGeometry.bit(field);
+        switch(piece) {
+            case DraughtsState.WHITEPIECE:
+                whiteMen ^= bit;
+                whiteCount += sign * PIECE_SQUARE[piece][field];
+                break;
+            case DraughtsState.WHITEKING:
+                whiteKings ^= bit;
+                whiteCount += sign * PIECE_SQUARE[piece][field];
+                break;
+            case DraughtsState.BLACKPIECE:
+                blackMen ^= bit;
+                blackCount += sign * PIECE_SQUARE[piece][field];
+                break;
+            case DraughtsState.BLACKKING:
+                blackKings ^= bit;
+                blackCount += sign * PIECE_SQUARE[piece][field];
+                break;
+            default:
+                break;
+        }
+    }
+}
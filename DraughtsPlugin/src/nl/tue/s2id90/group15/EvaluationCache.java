@@ -0,0 +1,67 @@
+package nl.tue.s2id90.group15;
+
+import java.util.Arrays;
+
+/**
+ * Group 15 - Petar Galic & Filip Davidovic
+ */
+// direct-mapped cache of static evaluations backed by a single preallocated long[]
+// the same position is evaluated again and again: by the stand pat of every quiescence search that reaches it, by razoring and
+// futility pruning, and in the next iteration of iterative deepening
+// every entry is one long: the upper 32 bits of the zobrist key and the evaluation in the lower 32 bits; the lowest bits of the key select
+// the entry, so a hit verifies the upper 32 bits and those index bits, but not the key bits in between (17 bits with the 256 KB of the search);
+// two positions that differ only there share their evaluation, which with random keys happens about once per 2^32 probes of an occupied entry
+// an entry of 0 is empty, a position with an evaluation of 0 and a key without upper bits is simply never cached
+// not thread-safe: the main search, every helper and the ponderer each have their own cache (see BoomShakaLaka.copyOptions),
+// so the entries and the hit counters are plain fields
+class EvaluationCache {
+    static final int MISS = Integer.MIN_VALUE; // returned by probe when the cache doesn't contain the key, never an evaluation
+    private static final long KEY_MASK = 0xFFFFFFFF00000000L;
+
+    private final long[] entries;
+    private final int indexMask; // number of entries - 1 (the number of entries is a power of two)
+    long probes; // number of calls to probe since the last resetCounters
+    long hits; // number of probes that found their key
+
+    /** creates an evaluation cache that uses at most the given number of kilobytes. */
+    EvaluationCache(int sizeInKB) {
+        if(sizeInKB < 1) {
+            throw new IllegalArgumentException("evaluation cache needs at least 1 KB");
+        }
+        int count = Integer.highestOneBit((int) Math.min(((long) sizeInKB << 10) / 8, 1 << 26)); // round down to a power of two
+        this.entries = new long[count];
+        this.indexMask = count - 1;
+    }
+
+    /** @return the evaluation stored for the given key, or MISS if the cache doesn't contain the key. */
+    int probe(long key) {
+        probes++;
+        long entry = entries[(int) key & indexMask];
+        if(entry != 0 && (entry & KEY_MASK) == (key & KEY_MASK)) {
+            hits++;
+            return (int) entry;
+        }
+        return MISS;
+    }
+
+    /** stores the evaluation of the position with the given key, replacing whatever was in its entry. */
+    void store(long key, int evaluation) {
+        entries[(int) key & indexMask] = (key & KEY_MASK) | (evaluation & 0xFFFFFFFFL);
+    }
+
+    /** removes all entries from the cache. */
+    void clear() {
+        Arrays.fill(entries, 0L);
+    }
+
+    /** sets the hit rate counters to 0. */
+    void resetCounters() {
+        probes = 0;
+        hits = 0;
+    }
+
+    /** @return the fraction of the probes since the last resetCounters that were hits. */
+    double getHitRate() {
+        return probes == 0 ? 0.0 : (double) hits / probes;
+    }
+}
@@ -0,0 +1,79 @@
+package nl.tue.s2id90.group15;
+
+import static nl.tue.s2id90.group15.BoardGeometry.*;
+
+/**
+ * Group 15 - Petar Galic & Filip Davidovic
+ */
+// counts moves on the bitboards of the evaluation without generating them: DraughtsState.getMoves() builds a Move object for every move
+// and copies them into a new list, which is far too expensive to do at every leaf
+// the counts ignore that a capture is compulsory, they tell how free the pieces are rather than which moves are legal right now
+final class Mobility {
+    private static final int[][] FORWARD = {{UP_LEFT, UP_RIGHT}, {DOWN_LEFT, DOWN_RIGHT}}; // [colour]: directions in which the men move
+    static final int MAX_KING_MOVES = maxKingMoves(); // most quiet moves a single king can have, on an otherwise empty board
+
+    private Mobility() {
+    }
+
+    private static int maxKingMoves() {
+        int max = 0;
+        for(int f = 1; f <= FIELDS; f++) {
+            max = Math.max(max, kingMoves(bit(f), ALL_FIELDS & ~bit(f)));
+        }
+        return max;
+    }
+
+    /** @return the number of quiet moves of the given men of colour (WHITE or BLACK). */
+    static int menMoves(long men, long empty, int colour) {
+        int[] forward = FORWARD[colour];
+        int moves = 0;
+        for(long s = men; s != 0; s &= s - 1) {
+            int[] neighbours = NEIGHBOURS[Long.numberOfTrailingZeros(s)];
+            if(contains(empty, neighbours[forward[0]])) {
+                moves++;
+            }
+            if(contains(empty, neighbours[forward[1]])) {
+                moves++;
+            }
+        }
+        return moves;
+    }
+
+    /** @return the number of quiet moves of the given kings: every empty field on their diagonals up to the first piece. */
+    static int kingMoves(long kings, long empty) {
+        int moves = 0;
+        for(long s = kings; s != 0; s &= s - 1) {
+            int from = Long.numberOfTrailingZeros(s);
+            for(int d = 0; d < 4; d++) {
+                int[] ray = RAYS[from][d];
+                for(int i = 0; contains(empty, ray[i]); i++) {
+                    moves++;
+                }
+            }
+        }
+        return moves;
+    }
+
+    /** @return the number of the given kings that can neither move nor capture one of the opponents. */
+    static int trappedKings(long kings, long opponents, long empty) {
+        int trapped = 0;
+        for(long s = kings; s != 0; s &= s - 1) {
+            int from = Long.numberOfTrailingZeros(s);
+            if((ADJACENT[from] & empty) == 0 && !canCapture(from, opponents, empty)) {
+                trapped++;
+            }
+        }
+        return trapped;
+    }
+
+    // whether or not the king on from can capture one of the opponents, its neighbours are all occupied
+    private static boolean canCapture(int from, long opponents, long empty) {
+        for(int d = 0; d < 4; d++) {
+            int[] ray = RAYS[from][d];
+            if(contains(opponents, ray[0]) && contains(empty, ray[1])) { // ray[0] isn't NONE here, so ray[1] exists
+                return true;
+            }
+        }
+        return false;
+    }
+}
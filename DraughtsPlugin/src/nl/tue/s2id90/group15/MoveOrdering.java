@@ -0,0 +1,132 @@
+package nl.tue.s2id90.group15;
+
+import java.util.Arrays;
+import java.util.List;
+import nl.tue.s2id90.draughts.DraughtsState;
+import org10x10.dam.game.Move;
+
+/**
+ * Group 15 - Petar Galic & Filip Davidovic
+ */
+// orders the moves of a node so that the moves most likely to cause a cut-off are searched first
+// every move gets a score once, after which the moves are sorted on that score:
+// 1. the best move stored in the transposition table for this state
+// 2. captures, more captured pieces (and kings) first
+// 3. killer moves: the last two quiet moves that caused a cut-off at the same ply
+// 4. all other moves by their history score: how often (and how deep) the move caused a cut-off anywhere in the tree
+// moves are identified by their begin and end field, so killers and history also apply to the same move in a different state
+// not thread-safe: the killers and history belong to one search thread, every helper and the ponderer have their own MoveOrdering
+class MoveOrdering {
+    static final int MAX_PLY = 128; // killers are only kept for plies below this one
+
+    private static final int HASH_MOVE_SCORE = 1 << 30;
+    private static final int CAPTURE_SCORE = 1 << 26;
+    private static final int KILLER_SCORE = 1 << 24;
+    private static final int MAX_HISTORY = 1 << 22; // history scores are halved when one of them gets above this value
+
+    private final int[][] killers = new int[MAX_PLY][2]; // (begin field << 6) | end field of the killer moves, 0 is no killer
+    private final int[][][] history = new int[2][51][51]; // [white move ? 0 : 1][begin field][end field]
+    private int[] scores = new int[64]; // scratch array with the score of every move, grows when a state has more moves
+
+    /** forgets the killers of the previous search and ages the history scores. */
+    void newSearch() {
+        for(int[] killer : killers) {
+            Arrays.fill(killer, 0);
+        }
+        ageHistory();
+    }
+
+    /** sorts moves in place from the most to the least promising move.
+     * @param moves moves of the state that is searched
+     * @param hashMove best move of this state according to the transposition table, or null
+     * @param ply distance from the root of the search
+     */
+    void order(List<Move> moves, Move hashMove, int ply) {
+        int n = moves.size();
+        if(n < 2) {
+            return;
+        }
+        if(scores.length < n) {
+            scores = new int[2 * n];
+        }
+        for(int i = 0; i < n; i++) {
+            scores[i] = score(moves.get(i), hashMove, ply);
+        }
+        // insertion sort on the scores, the number of moves is small and the list is often partially sorted already
+        for(int i = 1; i < n; i++) {
+            int score = scores[i];
+            Move move = moves.get(i);
+            int j = i - 1;
+            while(j >= 0 && scores[j] < score) {
+                scores[j + 1] = scores[j];
+                moves.set(j + 1, moves.get(j));
+                j--;
+            }
+            scores[j + 1] = score;
+            moves.set(j + 1, move);
+        }
+    }
+
+    /** registers that move caused a cut-off at the given ply with the given remaining depth. */
+    void cutoff(Move move, int depth, int ply) {
+        if(move.isCapture()) { // captures are already ordered first
+            return;
+        }
+        int code = code(move);
+        if(ply < MAX_PLY && killers[ply][0] != code) {
+            killers[ply][1] = killers[ply][0];
+            killers[ply][0] = code;
+        }
+        int[] moveHistory = history[move.isWhiteMove() ? 0 : 1][move.getBeginField()];
+        moveHistory[move.getEndField()] += depth * depth;
+        if(moveHistory[move.getEndField()] > MAX_HISTORY) {
+            ageHistory();
+        }
+    }
+
+    /** @return whether or not move is one of the killer moves at the given ply. */
+    boolean isKiller(Move move, int ply) {
+        int code = code(move);
+        return ply < MAX_PLY && (killers[ply][0] == code || killers[ply][1] == code);
+    }
+
+    private int score(Move move, Move hashMove, int ply) {
+        if(move == hashMove) {
+            return HASH_MOVE_SCORE;
+        }
+        if(move.isCapture()) {
+            int kings = 0;
+            for(int i = 0; i < move.getCaptureCount(); i++) {
+                int piece = move.getCapturedPiece(i);
+                if(piece == DraughtsState.WHITEKING || piece == DraughtsState.BLACKKING) {
+                    kings++;
+                }
+            }
+            return CAPTURE_SCORE + (move.getCaptureCount() << 8) + kings;
+        }
+        int code = code(move);
+        if(ply < MAX_PLY) {
+            if(killers[ply][0] == code) {
+                return KILLER_SCORE + 1;
+            }
+            if(killers[ply][1] == code) {
+                return KILLER_SCORE;
+            }
+        }
+        return history[move.isWhiteMove() ? 0 : 1][move.getBeginField()][move.getEndField()];
+    }
+
+    private void ageHistory() {
+        for(int[][] colorHistory : history) {
+            for(int[] fieldHistory : colorHistory) {
+                for(int i = 0; i < fieldHistory.length; i++) {
+                    fieldHistory[i] >>= 1;
+                }
+            }
+        }
+    }
+
+    static int code(Move move) { // (begin field << 6) | end field, also used by the opening book
+        return (move.getBeginField() << 6) | move.getEndField();
+    }
+}
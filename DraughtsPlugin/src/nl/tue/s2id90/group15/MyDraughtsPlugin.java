@@ -3,6 +3,7 @@ package nl.tue.s2id90.group15;
 import nl.tue.s2id90.group15.testPlayer;
 import net.xeoh.plugins.base.annotations.PluginImplementation;
 import nl.tue.s2id90.draughts.DraughtsPlayerProvider;
+import nl.tue.s2id90.draughts.player.DraughtsPlayer;
 import nl.tue.s2id90.draughts.DraughtsPlugin;
 
 /**
@@ -16,6 +17,55 @@ public class MyDraughtsPlugin extends DraughtsPlayerProvider implements Draughts
         // During the final competition you should make only your 
         // best player available. For testing it might be handy
         // to make more than one player available.
-        super(new BoomShakaLaka(6), new testPlayer(5));
+        super(players());
+    }
+    
+    // the analysis player only when ANALYSIS_PROPERTY is set, because OfflineTournament plays every player of the plugin
+    private static DraughtsPlayer[] players() {
+        if(Boolean.getBoolean(ANALYSIS_PROPERTY)) {
+            return new DraughtsPlayer[] { boomShakaLaka(), analysis(), new testPlayer(5) };
+        }
+        return new DraughtsPlayer[] { boomShakaLaka(), new testPlayer(5) };
+    }
+    
+    static final int TOURNAMENT_MOVE_LIMIT = 50; // plies after which OfflineTournament ends a game in a draw
+    static final int TOURNAMENT_MOVE_TIME = 200; // milliseconds per move that OfflineTournament gives, before it calls stop()
+    // system property that switches pondering on (-Dgroup15.ponder=true); it is off by default, because the tournament and the GUI run
+    // both players in one process, where the ponder thread takes processor time from the opponent during its move
+    static final String PONDER_PROPERTY = "group15.ponder";
+    // system property that adds the analysis player (-Dgroup15.analysis=true), for analysing games in the GUI
+    static final String ANALYSIS_PROPERTY = "group15.analysis";
+    
+    // BoomShakaLaka plans its time for the 200 ms per move of the OfflineTournament, the depth is limited by the time only;
+    // in the GUI, which gives at least 1 second, it simply returns its move early
+    // it uses all processors, thinks on the opponent's time when PONDER_PROPERTY is set, plays the first moves from its opening book
+    // and knows the endgames of the tablebase, when it has been generated (see TablebaseGenerator and Tablebase.load)
+    // it plans for the move limit of the OfflineTournament, in the GUI the limit is dropped as soon as a game goes past it
+    // with more than one processor, one of them runs the proof-number solver instead of a search helper
+    private static BoomShakaLaka boomShakaLaka() {
+        int processors = Runtime.getRuntime().availableProcessors();
+        boolean solver = processors > 1;
+        BoomShakaLaka player = new BoomShakaLaka(BoomShakaLaka.MAX_DEPTH, TOURNAMENT_MOVE_TIME, 32, solver ? processors - 1 : processors);
+        player.proofNumberSearch = solver;
+        player.ponder = Boolean.getBoolean(PONDER_PROPERTY);
+        player.book = OpeningBook.load();
+        player.tablebase = Tablebase.load();
+        player.moveLimit = TOURNAMENT_MOVE_LIMIT;
+        return player;
+    }
+    
+    static final int ANALYSIS_LINES = 3; // number of root moves the analysis player shows
+    
+    // the same player in multi-PV mode for analysing games in the GUI: it prints the best ANALYSIS_LINES moves with their values and
+    // principal variations for every depth to the console, and plays the best one; it doesn't ponder, so it keeps the console readable
+    private static BoomShakaLaka analysis() {
+        BoomShakaLaka player = new BoomShakaLaka(BoomShakaLaka.MAX_DEPTH, TOURNAMENT_MOVE_TIME, 32, Runtime.getRuntime().availableProcessors());
+        player.multiPv = ANALYSIS_LINES;
+        player.analysisListener = lines -> {
+            lines.forEach(System.out::println);
+            System.out.println();
+        };
+        player.tablebase = Tablebase.load();
+        return player;
     }
 }
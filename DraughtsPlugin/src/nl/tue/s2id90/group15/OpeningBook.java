@@ -0,0 +1,160 @@
+package nl.tue.s2id90.group15;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import nl.tue.s2id90.draughts.DraughtsState;
+import org10x10.dam.game.Move;
+
+/**
+ * Group 15 - Petar Galic & Filip Davidovic
+ */
+// opening book: the moves that deeper searches found for the positions of the first moves of a game, see OpeningBookBuilder
+// the book is a binary file that is memory mapped, so a lookup is a binary search directly in the file without copying anything
+// - header: MAGIC (long), number of entries (long)
+// - entries sorted on key: zobrist key of the position (long), move (int, begin field << 6 | end field), weight (int)
+// a position with more than one book move has an entry for every move, the move with the highest weight is played
+// the keys are DraughtsState.getZobristKey(), which only depends on the position (the random numbers have a fixed seed), so a book stays valid across runs
+class OpeningBook {
+    static final String RESOURCE = "openingbook.bin"; // name of the book that is packaged with the player
+    static final long MAGIC = 0x42534C424F4F4B31L; // "BSLBOOK1"
+    private static final int HEADER_SIZE = 16;
+    private static final int ENTRY_SIZE = 16;
+
+    private final MappedByteBuffer buffer;
+    private final int size; // number of entries
+
+    /** maps the book in the given file. */
+    OpeningBook(Path file) throws IOException {
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()); // the mapping stays valid after the channel is closed
+        }
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        if(buffer.capacity() < HEADER_SIZE || buffer.getLong(0) != MAGIC) {
+            throw new IOException("not an opening book: " + file);
+        }
+        long entries = buffer.getLong(8);
+        if(entries < 0 || HEADER_SIZE + entries * ENTRY_SIZE != buffer.capacity()) {
+            throw new IOException("truncated opening book: " + file);
+        }
+        size = (int) entries;
+    }
+
+    /** @return the book that is packaged next to this class, or null if there is none or it can't be read.
+     * A book inside a jar can't be mapped, it is copied to a temporary file first.
+     */
+    static OpeningBook load() {
+        URL url = OpeningBook.class.getResource(RESOURCE);
+        if(url == null) {
+            return null;
+        }
+        try {
+            if("file".equals(url.getProtocol())) {
+                return new OpeningBook(Paths.get(url.toURI()));
+            }
+            Path copy = Files.createTempFile("group15-", "-" + RESOURCE);
+            copy.toFile().deleteOnExit();
+            try(InputStream in = url.openStream()) {
+                Files.copy(in, copy, StandardCopyOption.REPLACE_EXISTING);
+            }
+            return new OpeningBook(copy);
+        } catch (IOException | URISyntaxException ex) {
+            System.err.println("opening book not loaded: " + ex);
+            return null;
+        }
+    }
+
+    /** @return the number of entries (position and move pairs) in the book. */
+    int size() {
+        return size;
+    }
+
+    /** @return the legal move of state with the highest weight in the book, or null if the book has no move for state. */
+    Move getMove(DraughtsState state) {
+        long key = state.getZobristKey();
+        List<Move> moves = state.getMoves();
+        Move bestMove = null;
+        int bestWeight = Integer.MIN_VALUE;
+        for(int i = firstIndex(key); i < size && key(i) == key; i++) {
+            int weight = buffer.getInt(HEADER_SIZE + i * ENTRY_SIZE + 12);
+            if(weight > bestWeight) {
+                Move move = find(moves, buffer.getInt(HEADER_SIZE + i * ENTRY_SIZE + 8));
+                if(move != null) { // a different position with the same key has moves that aren't legal here
+                    bestMove = move;
+                    bestWeight = weight;
+                }
+            }
+        }
+        return bestMove;
+    }
+
+    /** adds all entries of this book to entries: key -> (move -> weight). */
+    void addTo(SortedMap<Long, Map<Integer, Integer>> entries) {
+        for(int i = 0; i < size; i++) {
+            int offset = HEADER_SIZE + i * ENTRY_SIZE;
+            entries.computeIfAbsent(buffer.getLong(offset), k -> new HashMap<>())
+                    .merge(buffer.getInt(offset + 8), buffer.getInt(offset + 12), Integer::sum);
+        }
+    }
+
+    /** writes a book with the given entries: key -> (move -> weight). */
+    static void write(Path file, SortedMap<Long, Map<Integer, Integer>> entries) throws IOException {
+        long count = entries.values().stream().mapToLong(Map::size).sum();
+        ByteBuffer data = ByteBuffer.allocate((int) (HEADER_SIZE + count * ENTRY_SIZE)).order(ByteOrder.BIG_ENDIAN);
+        data.putLong(MAGIC).putLong(count);
+        // the keys are sorted as signed longs by the map, which is also the order of the binary search
+        for(Map.Entry<Long, Map<Integer, Integer>> position : entries.entrySet()) {
+            for(Map.Entry<Integer, Integer> move : position.getValue().entrySet()) {
+                data.putLong(position.getKey()).putInt(move.getKey()).putInt(move.getValue());
+            }
+        }
+        data.flip();
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while(data.hasRemaining()) {
+                channel.write(data);
+            }
+        }
+    }
+
+    private long key(int index) {
+        return buffer.getLong(HEADER_SIZE + index * ENTRY_SIZE);
+    }
+
+    // binary search for the first entry with the given key, returns the index where it would be when there is none
+    private int firstIndex(long key) {
+        int low = 0, high = size;
+        while(low < high) {
+            int middle = (low + high) >>> 1;
+            if(key(middle) < key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    // the move in moves with the given begin field << 6 | end field, captures with the same begin and end field can't be distinguished
+    private static Move find(List<Move> moves, int code) {
+        for(int i = 0; i < moves.size(); i++) {
+            if(MoveOrdering.code(moves.get(i)) == code) {
+                return moves.get(i);
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,93 @@
+package nl.tue.s2id90.group15;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import nl.tue.s2id90.draughts.DraughtsState;
+import org10x10.dam.game.Move;
+
+/**
+ * Group 15 - Petar Galic & Filip Davidovic
+ */
+// builds the opening book (see OpeningBook) by letting BoomShakaLaka play the first plies of many games against itself
+// every non-forced move the engine chooses is added to the book, the weight of a move is the number of times it was chosen
+// to get different openings, a random move is played instead of the engine's move now and then; these moves are not added to the book,
+// but the engine's answers to them are, so the book also covers openings the engine wouldn't play itself
+// the games are divided over a number of threads, each with its own engine
+// when the output file already exists, the new games are added to it, so a book can be deepened by running the builder again with more plies
+// usage: java -cp <classpath> nl.tue.s2id90.group15.OpeningBookBuilder <output file> [games] [plies] [depth] [threads]
+public class OpeningBookBuilder {
+    private static final double RANDOM_MOVE_CHANCE = 0.25; // chance that a random move is played instead of the engine's move
+    private static final int TRANSPOSITION_TABLE_SIZE = 16; // in MB, for every thread
+
+    public static void main(String[] args) throws IOException, InterruptedException, ExecutionException {
+        if(args.length == 0) {
+            System.err.println("usage: OpeningBookBuilder <output file> [games] [plies] [depth] [threads]");
+            return;
+        }
+        Path file = Paths.get(args[0]);
+        int games = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int plies = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        int depth = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+        int threads = args.length > 4 ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+
+        SortedMap<Long, Map<Integer, Integer>> entries = new TreeMap<>(); // zobrist key -> (move -> weight)
+        if(Files.exists(file)) {
+            new OpeningBook(file).addTo(entries);
+            System.out.format("extending %s: %d positions%n", file, entries.size());
+        }
+        long start = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<List<long[]>>> results = new ArrayList<>();
+        for(int t = 0; t < threads; t++) {
+            int thread = t;
+            results.add(pool.submit(() -> {
+                BoomShakaLaka engine = new BoomShakaLaka(depth, TRANSPOSITION_TABLE_SIZE, 1);
+                List<long[]> moves = new ArrayList<>();
+                for(int game = thread; game < games; game += threads) {
+                    playGame(engine, new Random(game), plies, moves);
+                }
+                return moves;
+            }));
+        }
+        for(Future<List<long[]>> result : results) {
+            for(long[] move : result.get()) {
+                entries.computeIfAbsent(move[0], k -> new HashMap<>()).merge((int) move[1], 1, Integer::sum);
+            }
+        }
+        pool.shutdown();
+        OpeningBook.write(file, entries);
+        System.out.format("wrote %s: %d positions, %d entries in %d s%n", file, entries.size(),
+                new OpeningBook(file).size(), (System.nanoTime() - start) / 1000000000L);
+    }
+
+    // plays the first plies of a game and adds the key of every position and the (begin << 6 | end) code of the engine's move to moves
+    private static void playGame(BoomShakaLaka engine, Random random, int plies, List<long[]> moves) {
+        DraughtsState state = new DraughtsState();
+        for(int ply = 0; ply < plies && !state.isEndState(); ply++) {
+            List<Move> legalMoves = state.getMoves();
+            Move move;
+            if(legalMoves.size() == 1) { // forced moves are played without looking in the book
+                move = legalMoves.get(0);
+            } else if(ply > 0 && random.nextDouble() < RANDOM_MOVE_CHANCE) {
+                move = legalMoves.get(random.nextInt(legalMoves.size()));
+            } else {
+                move = engine.getMove(state.clone());
+                moves.add(new long[] {state.getZobristKey(), MoveOrdering.code(move)});
+            }
+            state.doMove(move);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package nl.tue.s2id90.group15;
+
+/**
+ * Group 15 - Petar Galic & Filip Davidovic
+ */
+// stack of the zobrist keys of the positions of the game and of the search path, used to recognize repeated positions
+// a capture or a man move can never be undone, so a position can only repeat a position after the last such irreversible move;
+// for every position the stack keeps where its run of reversible moves started, so the repetition check only looks at that run
+// the key includes the side to move, so only every other position can be the same
+// a history belongs to one thread: the search, its helpers, the ponderer and the solver each start from a copy of the game history
+class PositionHistory {
+    private final long[] keys;
+    private final int[] runStart; // [i]: index of the first position of the run of reversible moves that position i is in
+    private final long[] runKeys; // [i]: sum of the keys of the positions of that run up to and including position i
+    private int size;
+
+    PositionHistory(int capacity) {
+        keys = new long[capacity];
+        runStart = new int[capacity];
+        runKeys = new long[capacity];
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /** makes this history a copy of other. */
+    void copy(PositionHistory other) {
+        System.arraycopy(other.keys, 0, keys, 0, other.size);
+        System.arraycopy(other.runStart, 0, runStart, 0, other.size);
+        System.arraycopy(other.runKeys, 0, runKeys, 0, other.size);
+        size = other.size;
+    }
+
+    /** adds the position with the given key, irreversible tells whether or not it was reached by a capture or a man move. */
+    void push(long key, boolean irreversible) {
+        if(size == keys.length) {
+            throw new IllegalStateException("position history is full");
+        }
+        keys[size] = key;
+        runStart[size] = irreversible || size == 0 ? size : runStart[size - 1];
+        runKeys[size] = runStart[size] == size ? key : runKeys[size - 1] + key;
+        size++;
+    }
+
+    /** removes the last position. */
+    void pop() {
+        size--;
+    }
+
+    /** @return whether or not there is room for count more positions. */
+    boolean hasRoom(int count) {
+        return size + count <= keys.length;
+    }
+
+    /** forgets the count oldest positions, they are too long ago to matter for the repetition check. */
+    void dropOldest(int count) {
+        count = Math.min(count, size);
+        for(int i = count; i < size; i++) {
+            keys[i - count] = keys[i];
+            runStart[i - count] = Math.max(runStart[i] - count, 0);
+            runKeys[i - count] = runKeys[i];
+        }
+        size -= count;
+    }
+
+    /** a key of the last position together with the positions before it since the last irreversible move: two paths to the same position
+     * only have the same run key when they can run into the same repetitions from there. the keys are added, not xored, so a position
+     * that occurs twice doesn't cancel out.
+     */
+    long runKey() {
+        return runKeys[size - 1];
+    }
+
+    /** @return whether or not the last position occurred before, since the last irreversible move. */
+    boolean isRepetition() {
+        int last = size - 1;
+        long key = keys[last];
+        for(int i = last - 2; i >= runStart[last]; i -= 2) {
+            if(keys[i] == key) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
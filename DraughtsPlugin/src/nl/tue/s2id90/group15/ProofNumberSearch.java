@@ -0,0 +1,314 @@
+package nl.tue.s2id90.group15;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import nl.tue.s2id90.draughts.DraughtsState;
+import org10x10.dam.game.Move;
+
+/**
+ * Group 15 - Petar Galic & Filip Davidovic
+ */
+// proof-number search (PN2): tries to prove that the attacker wins a position, without an evaluation function
+// every node has a proof number (how many leaves at least have to be proven to prove it) and a disproof number (same for disproving it);
+// the search always expands the most-proving leaf, so it goes straight down forced lines such as long capture combinations, where
+// alpha-beta spends its depth on all the quiet alternatives
+// - the attacker chooses in the OR nodes, the defender in the AND nodes
+// - a position without moves is lost for the player to move, a repetition, a known draw and a position at maxPly are not a win
+// - the tablebase and EndgameRecognizer decide the positions they know
+// - PN2: a leaf is not just expanded, a second PN search is run from it, and only the children of its root with their proof and
+//   disproof numbers are kept, so the first level stores much more knowledge per node; that costs a lot of time, so the second level
+//   only starts when the first level is half full and then grows with it: a short search is a plain PN search, a long one doesn't
+//   run out of memory
+// nodes are identified by the ply and the run key of the history (see PositionHistory), so transpositions at the same ply share a node
+// (a DAG) only when they passed the same positions since the last irreversible move; with the zobrist key alone, a node that was
+// proven on a path without repetitions would be reused on a path where its proof runs into one (graph history interaction)
+// the ply only grows along a path, so the graph has no cycles; repetitions are edges to "not a win", not nodes
+// the node store is a set of arrays with an open addressing index that are allocated once, a search ends when they are full
+class ProofNumberSearch {
+    static final int MAX_PLY = 120; // the deepest ply a proof can reach
+    private static final int INFINITY = Integer.MAX_VALUE / 4; // proof or disproof number of a solved node, sums saturate at it
+    private static final int NONE = -1; // firstEdge of a node that isn't expanded
+    private static final int NOT_A_WIN = -2; // edge to a repetition, which is a draw
+    private static final int MIN_INNER_NODES = 64; // smaller second level searches are not done, the leaf is just expanded
+    private static final long[] PLY_KEYS = new long[MAX_PLY + 1]; // mixed into the zobrist key, so that every ply has its own nodes
+
+    static {
+        Random random = new Random(25L);
+        for(int i = 0; i <= MAX_PLY; i++) {
+            PLY_KEYS[i] = random.nextLong();
+        }
+    }
+
+    // the node store: node i has key keys[i], and its children are edges[firstEdge[i]] up to edges[firstEdge[i] + edgeCount[i] - 1],
+    // in the order of state.getMoves()
+    private final long[] keys;
+    private final int[] proof, disproof;
+    private final int[] firstEdge;
+    private final short[] edgeCount;
+    private final int[] edges; // index of the child node, or NOT_A_WIN
+    private final int[] index; // open addressing hash index from the key to the node + 1, 0 is an empty slot
+    private final int indexMask;
+    private int nodes, usedEdges;
+
+    private final ProofNumberSearch inner; // the second level search, null in the second level search itself
+    private final EvaluationAccumulator board = new EvaluationAccumulator(); // bitboards for the tablebase and EndgameRecognizer
+    private final int[] path = new int[MAX_PLY + 1]; // the nodes from the root to the leaf that is expanded
+    private final Move[] pathMoves = new Move[MAX_PLY + 1];
+    Tablebase tablebase; // null if there is no tablebase
+    boolean endgameRecognizers = true; // let EndgameRecognizer decide the king endings it knows
+    boolean moveLimit; // whether or not maxPly is the end of the game, then a known win only counts when it is over before maxPly
+    private boolean attackerWhite; // the colour for which a win is proven
+    private int rootPly, maxPly;
+    private PositionHistory history; // the game and the path, for the repetitions
+    private volatile boolean stopped; // set by another thread to end the search
+
+    /** creates a PN2 search that stores at most the given number of nodes in its first level and innerNodes in its second level,
+     * or a PN search when innerNodes is 0. */
+    ProofNumberSearch(int maxNodes, int innerNodes) {
+        this(maxNodes, innerNodes == 0 ? null : new ProofNumberSearch(innerNodes, null));
+    }
+
+    private ProofNumberSearch(int maxNodes, ProofNumberSearch inner) {
+        this.inner = inner;
+        keys = new long[maxNodes];
+        proof = new int[maxNodes];
+        disproof = new int[maxNodes];
+        firstEdge = new int[maxNodes];
+        edgeCount = new short[maxNodes];
+        edges = new int[2 * maxNodes]; // every node is the child of at least one edge, a few more for the transpositions
+        int size = Integer.highestOneBit(Math.max(2 * maxNodes - 1, 1)) * 2;
+        index = new int[size];
+        indexMask = size - 1;
+    }
+
+    /** tries to prove that the player to move in root wins within maxPly plies.
+     * @param history the positions of the game up to and including root, it is back in its original state when this method returns
+     * @return the index in root.getMoves() of a winning move, or -1 if the win was disproven, the store is full or the search was stopped
+     */
+    int findWin(DraughtsState root, int maxPly, PositionHistory history) {
+        attackerWhite = root.isWhiteToMove();
+        int rootNode = search(root, 0, maxPly, history, Integer.MAX_VALUE);
+        if(proof[rootNode] != 0) {
+            return -1;
+        }
+        for(int i = 0; i < edgeCount[rootNode]; i++) {
+            int child = edges[firstEdge[rootNode] + i];
+            if(child != NOT_A_WIN && proof[child] == 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /** ends the running search, and makes every next search end right away until start() is called. */
+    void stop() {
+        stopped = true;
+        if(inner != null) {
+            inner.stop();
+        }
+    }
+
+    /** allows searches again after stop(). */
+    void start() {
+        stopped = false;
+        if(inner != null) {
+            inner.start();
+        }
+    }
+
+    /** @return the number of nodes in the store after the last search. */
+    int getNodes() {
+        return nodes;
+    }
+
+    // runs the search from root until it is solved, the store is full, maxExpansions leaves were expanded or it is stopped
+    // the attacker has to be set already; state is back in its original position when it returns the root node
+    private int search(DraughtsState state, int rootPly, int maxPly, PositionHistory history, int maxExpansions) {
+        this.rootPly = rootPly;
+        this.maxPly = Math.min(maxPly, rootPly + MAX_PLY);
+        this.history = history;
+        clear();
+        int rootNode = node(state, rootPly);
+        boolean rootOr = state.isWhiteToMove() == attackerWhite;
+        for(int expansions = 0; expansions < maxExpansions && !stopped; expansions++) {
+            if(proof[rootNode] == 0 || disproof[rootNode] == 0) {
+                break;
+            }
+            // walk down to the most-proving leaf
+            int n = rootNode, depth = 0;
+            path[0] = n;
+            while(firstEdge[n] != NONE && proof[n] != 0 && disproof[n] != 0) {
+                int edge = mostProving(n, state.isWhiteToMove() == attackerWhite);
+                Move move = state.getMoves().get(edge - firstEdge[n]);
+                state.doMove(move);
+                history.push(state.getZobristKey(), BoomShakaLaka.isIrreversible(move));
+                pathMoves[depth++] = move;
+                n = edges[edge];
+                path[depth] = n;
+            }
+            boolean expanded = expand(n, state, rootPly + depth);
+            // walk back up to the root, updating the numbers of the nodes on the path
+            for(int d = depth; d >= 0; d--) {
+                update(path[d], (d % 2 == 0) == rootOr);
+                if(d > 0) {
+                    state.undoMove(pathMoves[d - 1]);
+                    history.pop();
+                }
+            }
+            if(!expanded) { // the store is full
+                break;
+            }
+        }
+        return rootNode;
+    }
+
+    private void clear() {
+        Arrays.fill(index, 0);
+        nodes = 0;
+        usedEdges = 0;
+    }
+
+    // the edge of n to the child with the smallest proof number (attacker to move) or disproof number (defender to move)
+    private int mostProving(int n, boolean or) {
+        int best = NONE, bestNumber = Integer.MAX_VALUE;
+        for(int e = firstEdge[n], end = e + edgeCount[n]; e < end; e++) {
+            int child = edges[e];
+            if(child == NOT_A_WIN) {
+                continue;
+            }
+            int number = or ? proof[child] : disproof[child];
+            if(number < bestNumber) {
+                best = e;
+                bestNumber = number;
+            }
+        }
+        return best;
+    }
+
+    // recomputes the proof and disproof number of the expanded node n from its children
+    private void update(int n, boolean or) {
+        if(firstEdge[n] == NONE) {
+            return;
+        }
+        int min = INFINITY, sum = 0;
+        for(int e = firstEdge[n], end = e + edgeCount[n]; e < end; e++) {
+            int child = edges[e];
+            int childProof = child == NOT_A_WIN ? INFINITY : proof[child];
+            int childDisproof = child == NOT_A_WIN ? 0 : disproof[child];
+            if(or) {
+                min = Math.min(min, childProof);
+                sum = Math.min(sum + childDisproof, INFINITY);
+            } else {
+                min = Math.min(min, childDisproof);
+                sum = Math.min(sum + childProof, INFINITY);
+            }
+        }
+        proof[n] = or ? min : sum;
+        disproof[n] = or ? sum : min;
+    }
+
+    // creates the children of the leaf n in state; with a second level, their numbers come from a PN search from state
+    // returns false when the store can't hold them
+    private boolean expand(int n, DraughtsState state, int ply) {
+        if(proof[n] == 0 || disproof[n] == 0) { // solved through another parent, whose numbers are newer than those on the path
+            return true;
+        }
+        List<Move> moves = state.getMoves();
+        int count = moves.size();
+        if(usedEdges + count > edges.length || nodes + count > keys.length) {
+            return false;
+        }
+        int innerRoot = NONE;
+        int innerNodes = inner == null ? 0 : (int) ((2.0 * nodes / keys.length - 1) * inner.keys.length); // negative when less than half full
+        if(innerNodes >= MIN_INNER_NODES) {
+            inner.attackerWhite = attackerWhite;
+            inner.tablebase = tablebase;
+            inner.endgameRecognizers = endgameRecognizers;
+            inner.moveLimit = moveLimit;
+            innerRoot = inner.search(state, ply, maxPly, history, innerNodes);
+            moves = state.getMoves(); // the second level search made and unmade moves in state
+        }
+        int first = usedEdges;
+        usedEdges += count;
+        for(int i = 0; i < count; i++) {
+            Move move = moves.get(i);
+            state.doMove(move);
+            history.push(state.getZobristKey(), BoomShakaLaka.isIrreversible(move));
+            int child = history.isRepetition() ? NOT_A_WIN : node(state, ply + 1);
+            if(child != NOT_A_WIN && innerRoot != NONE && inner.firstEdge[innerRoot] != NONE && isUnknownLeaf(child)) {
+                int innerChild = inner.edges[inner.firstEdge[innerRoot] + i];
+                if(innerChild != NOT_A_WIN) {
+                    proof[child] = inner.proof[innerChild];
+                    disproof[child] = inner.disproof[innerChild];
+                }
+            }
+            edges[first + i] = child;
+            history.pop();
+            state.undoMove(move);
+        }
+        firstEdge[n] = first;
+        edgeCount[n] = (short) count;
+        return true;
+    }
+
+    // whether or not n is a leaf of which nothing is known yet
+    private boolean isUnknownLeaf(int n) {
+        return firstEdge[n] == NONE && proof[n] == 1 && disproof[n] == 1;
+    }
+
+    // the node of state at ply, which is created as a leaf if it isn't in the store yet; state is the last position of the history
+    private int node(DraughtsState state, int ply) {
+        long key = history.runKey() ^ PLY_KEYS[ply - rootPly];
+        int slot = (int) (key ^ (key >>> 32)) & indexMask;
+        while(index[slot] != 0) {
+            if(keys[index[slot] - 1] == key) {
+                return index[slot] - 1;
+            }
+            slot = (slot + 1) & indexMask;
+        }
+        int n = nodes++;
+        index[slot] = n + 1;
+        keys[n] = key;
+        firstEdge[n] = NONE;
+        edgeCount[n] = 0;
+        int result = terminalValue(state, ply); // for the player to move
+        boolean attackerToMove = state.isWhiteToMove() == attackerWhite;
+        if(result == Tablebase.UNKNOWN) {
+            proof[n] = 1;
+            disproof[n] = 1;
+        } else if((result == Tablebase.WIN) == attackerToMove && result != Tablebase.DRAW) {
+            proof[n] = 0;
+            disproof[n] = INFINITY;
+        } else {
+            proof[n] = INFINITY;
+            disproof[n] = 0;
+        }
+        return n;
+    }
+
+    // the value of state for the player to move when it doesn't have to be searched (Tablebase.WIN, DRAW or LOSS), or Tablebase.UNKNOWN
+    private int terminalValue(DraughtsState state, int ply) {
+        if(state.getMoves().isEmpty()) {
+            return Tablebase.LOSS;
+        }
+        if(ply >= maxPly) { // the game is over, or the proof would get too deep
+            return Tablebase.DRAW;
+        }
+        board.reset(state);
+        int result = Tablebase.UNKNOWN;
+        if(tablebase != null && Long.bitCount(board.whiteMen | board.whiteKings | board.blackMen | board.blackKings) <= tablebase.getMaxPieces()) {
+            result = tablebase.probe(board.whiteMen, board.whiteKings, board.blackMen, board.blackKings, state.isWhiteToMove());
+            if(result != Tablebase.DRAW && moveLimit && maxPly - ply < tablebase.getLongestWin()) {
+                result = Tablebase.UNKNOWN;
+            }
+        }
+        if(result == Tablebase.UNKNOWN && endgameRecognizers) {
+            result = EndgameRecognizer.recognize(board.whiteMen, board.whiteKings, board.blackMen, board.blackKings, state.isWhiteToMove());
+            if(result != Tablebase.DRAW && moveLimit && maxPly - ply < EndgameRecognizer.LONGEST_WIN) {
+                result = Tablebase.UNKNOWN;
+            }
+        }
+        return result;
+    }
+}
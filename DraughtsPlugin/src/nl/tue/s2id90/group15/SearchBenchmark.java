@@ -0,0 +1,170 @@
+package nl.tue.s2id90.group15;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
+import nl.tue.s2id90.draughts.DraughtsState;
+import org10x10.dam.game.Move;
+
+/**
+ * Group 15 - Petar Galic & Filip Davidovic
+ */
+// headless benchmark that searches a fixed set of positions to a fixed depth with different search options
+// and prints the number of nodes and the time it took, so that changes to the search can be compared
+// usage: java -cp <classpath> nl.tue.s2id90.group15.SearchBenchmark [depth]
+public class SearchBenchmark {
+    private static final int POSITIONS = 8; // number of benchmark positions
+    private static final int PLIES_BETWEEN_POSITIONS = 6; // the positions are taken from one game, this many plies apart
+    private static final long SEED = 15L; // seed of the game from which the positions are taken, so that every run uses the same positions
+    private static final int EVALUATIONS = 1000000; // number of calls that are timed by the evaluation benchmarks
+    private static final int[] EVALUATION_CACHE_SIZES = {16, 64, 256, 1024, 4096}; // evaluation cache sizes in KB that are compared
+
+    public static void main(String[] args) {
+        int depth = args.length > 0 ? Integer.parseInt(args[0]) : 7;
+        List<DraughtsState> positions = positions();
+        run("alpha-beta", depth, positions, engine -> {
+            engine.principalVariationSearch = false;
+            engine.aspirationWindows = false;
+            selective(engine, false);
+        });
+        run("pvs", depth, positions, engine -> {
+            engine.aspirationWindows = false;
+            selective(engine, false);
+        });
+        run("pvs + aspiration", depth, positions, engine -> selective(engine, false));
+        run("pvs + aspiration + lmr", depth, positions, engine -> {
+            selective(engine, false);
+            engine.lateMoveReductions = true;
+        });
+        run("all pruning", depth, positions, engine -> { });
+        run("no single reply ext.", depth, positions, engine -> engine.singleReplyExtensions = false);
+        run("no lazy evaluation", depth, positions, engine -> engine.lazyEvaluation = false);
+        run("no mobility", depth, positions, engine -> engine.mobilityEvaluation = false);
+        run("no evaluation cache", depth, positions, engine -> engine.evaluationCache = null);
+        for(int size : EVALUATION_CACHE_SIZES) {
+            run("evaluation cache " + size + " KB", depth, positions, engine -> engine.evaluationCache = new EvaluationCache(size));
+        }
+        drivers(depth, positions);
+        evaluation(positions);
+    }
+
+    // searches all positions with the aspiration window driver and with the MTD(f) driver, all pruning on, and prints
+    // for every iteration the nodes and the calls to alphaBeta of both, summed over the positions
+    private static void drivers(int depth, List<DraughtsState> positions) {
+        long[][] nodes = new long[2][depth + 1], searches = new long[2][depth + 1];
+        long[] time = new long[2];
+        for(int driver = 0; driver < 2; driver++) {
+            BoomShakaLaka engine = new BoomShakaLaka(depth, 0, 32, 1, driver == 1);
+            for(DraughtsState position : positions) {
+                engine.transpositionTable.clear();
+                engine.evaluationCache.clear();
+                long start = System.nanoTime();
+                engine.getMove(position.clone());
+                time[driver] += System.nanoTime() - start;
+                for(int d = 1; d <= depth; d++) {
+                    nodes[driver][d] += engine.iterationNodes[d];
+                    searches[driver][d] += engine.iterationSearches[d];
+                }
+            }
+        }
+        System.out.format("%-24s %12s %9s %12s %9s%n", "iteration", "aspiration", "searches", "mtd(f)", "searches");
+        for(int d = 1; d <= depth; d++) {
+            System.out.format("%-24s %12d %9d %12d %9d%n", "depth " + d, nodes[0][d], searches[0][d], nodes[1][d], searches[1][d]);
+        }
+        System.out.format("%-24s %9d ms %9s %9d ms%n", "time", time[0] / 1000000, "", time[1] / 1000000);
+    }
+
+    // evaluates the benchmark positions and counts their mobility over and over, see time
+    private static void evaluation(List<DraughtsState> positions) {
+        BoomShakaLaka engine = new BoomShakaLaka(1, 1, 1);
+        time("evaluate", positions, engine::evaluate);
+        List<EvaluationAccumulator> boards = new ArrayList<>(); // mobility works on the bitboards of the accumulator, which the search keeps up to date
+        for(DraughtsState position : positions) {
+            EvaluationAccumulator board = new EvaluationAccumulator();
+            board.reset(position);
+            boards.add(board);
+        }
+        time("mobility", boards, board -> { // everything Mobility counts, for both sides
+            long empty = BoardGeometry.ALL_FIELDS & ~(board.whiteMen | board.whiteKings | board.blackMen | board.blackKings);
+            return Mobility.menMoves(board.whiteMen, empty, BoardGeometry.WHITE) + Mobility.kingMoves(board.whiteKings, empty)
+                    - Mobility.menMoves(board.blackMen, empty, BoardGeometry.BLACK) - Mobility.kingMoves(board.blackKings, empty)
+                    - Mobility.trappedKings(board.whiteKings, board.blackMen | board.blackKings, empty)
+                    + Mobility.trappedKings(board.blackKings, board.whiteMen | board.whiteKings, empty);
+        });
+    }
+
+    // calls call on the given positions over and over and prints the time and the number of bytes allocated per call
+    // the allocated bytes are only available on JVMs that implement com.sun.management.ThreadMXBean (hotspot does)
+    private static <T> void time(String name, List<T> positions, ToIntFunction<T> call) {
+        int checksum = 0;
+        for(int i = 0; i < EVALUATIONS; i++) { // warm up, so that the timed loop runs compiled code
+            checksum += call.applyAsInt(positions.get(i % positions.size()));
+        }
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        boolean allocations = threads instanceof com.sun.management.ThreadMXBean;
+        long bytes = allocations ? ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId()) : 0;
+        long start = System.nanoTime();
+        for(int i = 0; i < EVALUATIONS; i++) {
+            checksum += call.applyAsInt(positions.get(i % positions.size()));
+        }
+        long time = System.nanoTime() - start;
+        if(allocations) {
+            bytes = ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId()) - bytes;
+        }
+        System.out.format("%-24s calls=%10d time=%8.1f ns/call bytes=%s/call (checksum %d)%n", name, EVALUATIONS,
+                (double) time / EVALUATIONS, allocations ? String.format("%.1f", (double) bytes / EVALUATIONS) : "n/a", checksum);
+    }
+
+    // switches the selective pruning options of engine on or off
+    private static void selective(BoomShakaLaka engine, boolean on) {
+        engine.lateMoveReductions = on;
+        engine.futilityPruning = on;
+        engine.razoring = on;
+    }
+
+    // searches all positions to the given depth with an engine configured by options and prints the totals
+    private static void run(String name, int depth, List<DraughtsState> positions, Consumer<BoomShakaLaka> options) {
+        BoomShakaLaka engine = new BoomShakaLaka(depth, 32, 1);
+        options.accept(engine);
+        long nodes = 0;
+        long time = 0;
+        long probes = 0, hits = 0; // of the evaluation cache
+        long lazy = 0, full = 0; // stand pat evaluations decided by the cheap terms alone and ones that needed all terms
+        for(DraughtsState position : positions) {
+            engine.transpositionTable.clear(); // every position starts with an empty table, like the first move of a game
+            if(engine.evaluationCache != null) {
+                engine.evaluationCache.clear();
+            }
+            long start = System.nanoTime();
+            engine.getMove(position.clone());
+            time += System.nanoTime() - start;
+            nodes += engine.nodes;
+            lazy += engine.lazyEvaluations;
+            full += engine.fullEvaluations;
+            if(engine.evaluationCache != null) {
+                probes += engine.evaluationCache.probes;
+                hits += engine.evaluationCache.hits;
+            }
+        }
+        System.out.format("%-24s depth=%2d nodes=%12d time=%8d ms evaluation cache hits=%5.1f%% lazy evaluations=%5.1f%%%n", name, depth, nodes,
+                time / 1000000, probes == 0 ? 0.0 : 100.0 * hits / probes, lazy + full == 0 ? 0.0 : 100.0 * lazy / (lazy + full));
+    }
+
+    // the benchmark positions: every PLIES_BETWEEN_POSITIONS plies of a game played with random moves
+    static List<DraughtsState> positions() {
+        List<DraughtsState> positions = new ArrayList<>();
+        Random random = new Random(SEED);
+        DraughtsState state = new DraughtsState();
+        while(positions.size() < POSITIONS && !state.isEndState()) {
+            positions.add(state.clone());
+            for(int i = 0; i < PLIES_BETWEEN_POSITIONS && !state.isEndState(); i++) {
+                List<Move> moves = state.getMoves();
+                state.doMove(moves.get(random.nextInt(moves.size())));
+            }
+        }
+        return positions;
+    }
+}
@@ -0,0 +1,213 @@
+package nl.tue.s2id90.group15;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Group 15 - Petar Galic & Filip Davidovic
+ */
+// endgame tablebase: the game theoretical value (win, draw or loss for the side to move) of every position with few pieces,
+// generated by TablebaseGenerator and read through memory mapped files
+// - a material signature is the number of white men, white kings, black men and black kings; every signature has its own file
+// - only positions with white to move are stored: a position with black to move is turned 180 degrees and the colours are swapped,
+//   which gives the same position with white to move (of the mirrored signature)
+// - the index of a position is a perfect hash of the piece placement: the set of fields of every kind of piece is numbered with the
+//   combinatorial number system, white men only on fields 6-50 and black men only on fields 1-45 (on their last row they are kings)
+//   index = ((whiteMen * C(50, wk) + whiteKings) * C(45, bm) + blackMen) * C(50, bk) + blackKings
+//   indices where two kinds of pieces share a field are not valid positions, they are stored as INVALID
+// - every position takes 2 bits, 4 positions per byte after a header with MAGIC and the signature
+// once loaded the mapped tables are only read with absolute gets, so the search threads and the solver share one Tablebase;
+// add is not thread-safe, it is only called while loading and by the generator
+class Tablebase {
+    static final int DRAW = 0; // also the value of positions that are still unresolved during generation
+    static final int WIN = 1; // the side to move wins
+    static final int LOSS = 2; // the side to move loses
+    static final int INVALID = 3; // index that isn't a position
+    static final int UNKNOWN = -1; // returned by probe when the position is not in the tablebase
+    static final int MAX_PIECES = 8; // the index is defined for at most this many pieces
+    static final int LONGEST_WIN_4_PIECES = 43; // plies of the longest win with up to 4 pieces (measured by retrograde analysis of the files)
+    static final long MAGIC = 0x4253_4C54_4231_0001L;
+    static final int HEADER_SIZE = 24; // MAGIC and the four piece counts
+    static final String DIRECTORY_PROPERTY = "group15.tablebases"; // system property with the directory of the tablebase files
+    static final String DEFAULT_DIRECTORY = "tablebases"; // used when the property is not set, relative to the working directory
+
+    private static final int MEN_FIELDS = 45; // number of fields a man can be on
+    private static final long[][] BINOMIAL = new long[BoardGeometry.FIELDS + 1][MAX_PIECES + 1]; // [n][k]: n over k
+
+    static {
+        for(int n = 0; n <= BoardGeometry.FIELDS; n++) {
+            BINOMIAL[n][0] = 1;
+            for(int k = 1; k <= MAX_PIECES && k <= n; k++) {
+                BINOMIAL[n][k] = BINOMIAL[n - 1][k - 1] + (k <= n - 1 ? BINOMIAL[n - 1][k] : 0);
+            }
+        }
+    }
+
+    private final MappedByteBuffer[] tables = new MappedByteBuffer[signatures()]; // [signature], null if there is no file for it
+    private int maxPieces; // largest number of pieces of a signature that is present
+
+    /** maps all tablebase files in directory. */
+    Tablebase(Path directory) throws IOException {
+        for(int wm = 0; wm <= MAX_PIECES; wm++) {
+            for(int wk = 0; wm + wk <= MAX_PIECES; wk++) {
+                for(int bm = 0; wm + wk + bm <= MAX_PIECES; bm++) {
+                    for(int bk = 0; wm + wk + bm + bk <= MAX_PIECES; bk++) {
+                        Path file = directory.resolve(fileName(wm, wk, bm, bk));
+                        if(Files.exists(file)) {
+                            add(file, wm, wk, bm, bk);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /** @return the tablebase in directory, or null if it doesn't contain any tablebase file or they can't be read. */
+    static Tablebase open(Path directory) {
+        if(!Files.isDirectory(directory)) {
+            return null;
+        }
+        try {
+            Tablebase tablebase = new Tablebase(directory);
+            return tablebase.maxPieces == 0 ? null : tablebase;
+        } catch (IOException ex) {
+            System.err.println("tablebase not loaded: " + ex);
+            return null;
+        }
+    }
+
+    /** @return the tablebase in the directory given by the system property DIRECTORY_PROPERTY (or DEFAULT_DIRECTORY), or null. */
+    static Tablebase load() {
+        return open(Paths.get(System.getProperty(DIRECTORY_PROPERTY, DEFAULT_DIRECTORY)));
+    }
+
+    /** maps the file with the table of the given signature, used by the generator after writing it. */
+    final void add(Path file, int wm, int wk, int bm, int bk) throws IOException {
+        MappedByteBuffer table;
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            table = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        table.order(ByteOrder.BIG_ENDIAN);
+        if(table.capacity() != HEADER_SIZE + (size(wm, wk, bm, bk) + 3) / 4 || table.getLong(0) != MAGIC
+                || table.getInt(8) != wm || table.getInt(12) != wk || table.getInt(16) != bm || table.getInt(20) != bk) {
+            throw new IOException("not a tablebase for " + fileName(wm, wk, bm, bk) + ": " + file);
+        }
+        tables[signature(wm, wk, bm, bk)] = table;
+        maxPieces = Math.max(maxPieces, wm + wk + bm + bk);
+    }
+
+    /** @return the largest number of pieces for which this tablebase has positions. */
+    int getMaxPieces() {
+        return maxPieces;
+    }
+
+    /** the tables don't store how long a win takes, so a WIN or LOSS only holds when at least this many plies of the game are left.
+     * @return the number of plies of the longest win in this tablebase, Integer.MAX_VALUE when it hasn't been measured for its size
+     */
+    int getLongestWin() {
+        return maxPieces <= 4 ? LONGEST_WIN_4_PIECES : Integer.MAX_VALUE;
+    }
+
+    /** @return the value of the position given by the bitboards of the pieces for the side to move, or UNKNOWN if it is not in the tablebase. */
+    int probe(long whiteMen, long whiteKings, long blackMen, long blackKings, boolean whiteToMove) {
+        if(whiteToMove) {
+            return probe(whiteMen, whiteKings, blackMen, blackKings);
+        }
+        return probe(mirror(blackMen), mirror(blackKings), mirror(whiteMen), mirror(whiteKings));
+    }
+
+    // value of the position with white to move
+    private int probe(long wm, long wk, long bm, long bk) {
+        if((wm | wk) == 0) { // white has nothing left to move
+            return LOSS;
+        }
+        if(Long.bitCount(wm | wk | bm | bk) > maxPieces) {
+            return UNKNOWN;
+        }
+        MappedByteBuffer table = tables[signature(Long.bitCount(wm), Long.bitCount(wk), Long.bitCount(bm), Long.bitCount(bk))];
+        if(table == null) {
+            return UNKNOWN;
+        }
+        return get(table, index(wm, wk, bm, bk));
+    }
+
+    /** @return the value at index in the table (without header check), used by the generator as well. */
+    static int get(ByteBuffer table, long index) {
+        int b = table.get(HEADER_SIZE + (int) (index >>> 2));
+        return (b >>> ((int) (index & 3) * 2)) & 3;
+    }
+
+    /** @return the position turned 180 degrees: field f becomes field 51 - f. */
+    static long mirror(long set) {
+        return Long.reverse(set) >>> (63 - BoardGeometry.FIELDS - 1);
+    }
+
+    /** @return the index of the position with white to move, see the comment at the top. */
+    static long index(long wm, long wk, long bm, long bk) {
+        long index = rank(wm, 6);
+        index = index * BINOMIAL[BoardGeometry.FIELDS][Long.bitCount(wk)] + rank(wk, 1);
+        index = index * BINOMIAL[MEN_FIELDS][Long.bitCount(bm)] + rank(bm, 1);
+        index = index * BINOMIAL[BoardGeometry.FIELDS][Long.bitCount(bk)] + rank(bk, 1);
+        return index;
+    }
+
+    /** decodes index into the four bitboards of the position with the given signature, the inverse of index. */
+    static void unindex(long index, int wm, int wk, int bm, int bk, long[] pieces) {
+        pieces[3] = unrank(index % BINOMIAL[BoardGeometry.FIELDS][bk], bk, BoardGeometry.FIELDS, 1);
+        index /= BINOMIAL[BoardGeometry.FIELDS][bk];
+        pieces[2] = unrank(index % BINOMIAL[MEN_FIELDS][bm], bm, MEN_FIELDS, 1);
+        index /= BINOMIAL[MEN_FIELDS][bm];
+        pieces[1] = unrank(index % BINOMIAL[BoardGeometry.FIELDS][wk], wk, BoardGeometry.FIELDS, 1);
+        index /= BINOMIAL[BoardGeometry.FIELDS][wk];
+        pieces[0] = unrank(index, wm, MEN_FIELDS, 6);
+    }
+
+    /** @return the number of indices of the given signature. */
+    static long size(int wm, int wk, int bm, int bk) {
+        return BINOMIAL[MEN_FIELDS][wm] * BINOMIAL[BoardGeometry.FIELDS][wk] * BINOMIAL[MEN_FIELDS][bm] * BINOMIAL[BoardGeometry.FIELDS][bk];
+    }
+
+    static String fileName(int wm, int wk, int bm, int bk) {
+        return "tb" + wm + wk + bm + bk + ".bin";
+    }
+
+    // the rank of a set of fields in the combinatorial number system, the fields are numbered from firstField
+    private static long rank(long set, int firstField) {
+        long rank = 0;
+        int k = 1;
+        for(long s = set; s != 0; s &= s - 1, k++) {
+            rank += BINOMIAL[Long.numberOfTrailingZeros(s) - firstField][k];
+        }
+        return rank;
+    }
+
+    // the set of k fields (numbered from firstField, out of n) with the given rank
+    private static long unrank(long rank, int k, int n, int firstField) {
+        long set = 0;
+        for(int i = k; i > 0; i--) {
+            int square = n - 1;
+            while(BINOMIAL[square][i] > rank) {
+                square--;
+            }
+            rank -= BINOMIAL[square][i];
+            set |= 1L << (square + firstField);
+            n = square;
+        }
+        return set;
+    }
+
+    private static int signatures() {
+        return (MAX_PIECES + 1) * (MAX_PIECES + 1) * (MAX_PIECES + 1) * (MAX_PIECES + 1);
+    }
+
+    private static int signature(int wm, int wk, int bm, int bk) {
+        return ((wm * (MAX_PIECES + 1) + wk) * (MAX_PIECES + 1) + bm) * (MAX_PIECES + 1) + bk;
+    }
+}
@@ -0,0 +1,330 @@
+package nl.tue.s2id90.group15;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import static nl.tue.s2id90.group15.BoardGeometry.*;
+
+/**
+ * Group 15 - Petar Galic & Filip Davidovic
+ */
+// generates the endgame tablebase (see Tablebase) for all positions with up to a given number of pieces
+// the signatures are solved in order of the number of pieces and then the number of men, so that every position a capture or a promotion
+// leads to is already in the tablebase; a signature is solved together with its mirror (colours swapped), because every move that doesn't
+// capture or promote goes from one to the other
+// solving is done by retrograde iteration over the positions of the signatures being solved:
+// - a position in which the side to move has no moves is lost
+// - a position with a move to a position that is lost for the opponent is won
+// - a position in which all moves lead to positions that are won for the opponent is lost
+// - the passes are repeated until nothing changes, the positions that are still unresolved then are draws
+// the positions of a pass are divided in chunks over a number of threads, a value only changes once (from unresolved to won or lost)
+// and is final when it does, so the threads can read each other's results during the pass
+// moves are generated with BoardGeometry on bitboards instead of with DraughtsState, which is far too slow for millions of positions;
+// the rules are those of the game: captures are compulsory, the maximum number of pieces has to be captured, captured pieces
+// are removed after the capture (and can't be jumped twice), men capture backwards and promote only when a move ends on the last row
+// usage: java -cp <classpath> nl.tue.s2id90.group15.TablebaseGenerator <directory> [pieces] [threads]
+public class TablebaseGenerator {
+    private static final int CHUNK = 1 << 14; // number of positions a thread takes at once
+
+    private final Path directory;
+    private final int threads;
+    private final Tablebase tablebase; // the signatures that are solved already
+
+    private TablebaseGenerator(Path directory, int threads) throws IOException {
+        this.directory = directory;
+        this.threads = threads;
+        tablebase = new Tablebase(directory);
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException, ExecutionException {
+        if(args.length == 0) {
+            System.err.println("usage: TablebaseGenerator <directory> [pieces] [threads]");
+            return;
+        }
+        Path directory = Paths.get(args[0]);
+        int pieces = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        if(pieces < 2 || pieces > Tablebase.MAX_PIECES) {
+            System.err.println("pieces has to be between 2 and " + Tablebase.MAX_PIECES);
+            return;
+        }
+        Files.createDirectories(directory);
+        new TablebaseGenerator(directory, threads).generate(pieces);
+    }
+
+    // solves all signatures with up to the given number of pieces that are not in the directory yet
+    private void generate(int maxPieces) throws IOException, InterruptedException, ExecutionException {
+        for(int pieces = 2; pieces <= maxPieces; pieces++) {
+            for(int men = 0; men <= pieces; men++) {
+                for(int white = 1; white < pieces; white++) {
+                    for(int wm = 0; wm <= white && wm <= men; wm++) {
+                        int wk = white - wm, bm = men - wm, bk = pieces - white - bm;
+                        // the mirror is solved together with the signature, so its file exists already when it comes by
+                        if(bm <= pieces - white && !Files.exists(directory.resolve(Tablebase.fileName(wm, wk, bm, bk)))) {
+                            solve(new int[] {wm, wk, bm, bk});
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    // solves the signature and its mirror and writes their files
+    private void solve(int[] signature) throws IOException, InterruptedException, ExecutionException {
+        long start = System.nanoTime();
+        int[] mirror = {signature[2], signature[3], signature[0], signature[1]};
+        boolean symmetric = Arrays.equals(signature, mirror);
+        Table[] tables = symmetric ? new Table[] {new Table(signature)} : new Table[] {new Table(signature), new Table(mirror)};
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        int passes = 0;
+        boolean changed = true;
+        while(changed) {
+            changed = false;
+            for(Table table : tables) {
+                AtomicLong next = new AtomicLong();
+                List<Future<Boolean>> results = new ArrayList<>();
+                for(int t = 0; t < threads; t++) {
+                    results.add(pool.submit(() -> {
+                        Successors successors = new Successors();
+                        long[] pieces = new long[4];
+                        boolean changes = false;
+                        for(long begin = next.getAndAdd(CHUNK); begin < table.values.length; begin = next.getAndAdd(CHUNK)) {
+                            long end = Math.min(begin + CHUNK, table.values.length);
+                            for(long index = begin; index < end; index++) {
+                                changes |= resolve(table, (int) index, tables, successors, pieces);
+                            }
+                        }
+                        return changes;
+                    }));
+                }
+                for(Future<Boolean> result : results) {
+                    changed |= result.get();
+                }
+            }
+            passes++;
+            for(Table table : tables) {
+                table.first = false;
+            }
+        }
+        pool.shutdown();
+        for(Table table : tables) {
+            Path file = directory.resolve(Tablebase.fileName(table.signature[0], table.signature[1], table.signature[2], table.signature[3]));
+            table.write(file);
+            tablebase.add(file, table.signature[0], table.signature[1], table.signature[2], table.signature[3]);
+            System.out.format("%s: %d positions, %d won, %d drawn, %d lost, %d passes, %d s%n", file.getFileName(), table.count(Tablebase.WIN)
+                    + table.count(Tablebase.DRAW) + table.count(Tablebase.LOSS), table.count(Tablebase.WIN), table.count(Tablebase.DRAW),
+                    table.count(Tablebase.LOSS), passes, (System.nanoTime() - start) / 1000000000L);
+        }
+    }
+
+    // tries to resolve the position at index of table, returns whether or not its value changed
+    private boolean resolve(Table table, int index, Table[] tables, Successors successors, long[] pieces) {
+        if(table.values[index] != Tablebase.DRAW) { // resolved or invalid
+            return false;
+        }
+        int[] s = table.signature;
+        Tablebase.unindex(index, s[0], s[1], s[2], s[3], pieces);
+        if(table.first) {
+            if(Long.bitCount(pieces[0] | pieces[1] | pieces[2] | pieces[3]) != s[0] + s[1] + s[2] + s[3]) { // two pieces on one field
+                table.values[index] = Tablebase.INVALID;
+                return true;
+            }
+        }
+        successors.generate(pieces[0], pieces[1], pieces[2], pieces[3]);
+        boolean allWon = true; // all moves lead to a position that is won for the opponent
+        for(int i = 0; i < successors.count; i++) {
+            int value = value(successors, i, tables);
+            if(value == Tablebase.LOSS) {
+                table.values[index] = Tablebase.WIN;
+                return true;
+            }
+            allWon &= value == Tablebase.WIN;
+        }
+        if(allWon) { // also when there are no moves at all
+            table.values[index] = Tablebase.LOSS;
+            return true;
+        }
+        return false;
+    }
+
+    // value of the i-th successor for the opponent, who is to move there; DRAW when it is still unresolved
+    private int value(Successors successors, int i, Table[] tables) {
+        // the opponent's position with the board turned around, so that the opponent is white
+        long wm = Tablebase.mirror(successors.positions[4 * i + 2]), wk = Tablebase.mirror(successors.positions[4 * i + 3]);
+        long bm = Tablebase.mirror(successors.positions[4 * i]), bk = Tablebase.mirror(successors.positions[4 * i + 1]);
+        for(Table table : tables) {
+            if(table.contains(wm, wk, bm, bk)) {
+                return table.values[(int) Tablebase.index(wm, wk, bm, bk)];
+            }
+        }
+        int value = tablebase.probe(wm, wk, bm, bk, true);
+        if(value == Tablebase.UNKNOWN) {
+            throw new IllegalStateException("tablebase of the position after a capture or promotion is missing");
+        }
+        return value;
+    }
+
+    // the values of the positions of one signature while it is being solved
+    private static class Table {
+        final int[] signature;
+        final byte[] values; // [index], Tablebase values, DRAW while unresolved
+        boolean first = true; // whether or not this is the first pass, in which invalid indices are marked
+
+        Table(int[] signature) {
+            this.signature = signature;
+            long size = Tablebase.size(signature[0], signature[1], signature[2], signature[3]);
+            if(size > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("signature too large: " + Tablebase.fileName(signature[0], signature[1], signature[2], signature[3]));
+            }
+            values = new byte[(int) size];
+        }
+
+        boolean contains(long wm, long wk, long bm, long bk) {
+            return Long.bitCount(wm) == signature[0] && Long.bitCount(wk) == signature[1]
+                    && Long.bitCount(bm) == signature[2] && Long.bitCount(bk) == signature[3];
+        }
+
+        long count(int value) {
+            long count = 0;
+            for(byte v : values) {
+                if(v == value) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        void write(Path file) throws IOException {
+            ByteBuffer data = ByteBuffer.allocate(Tablebase.HEADER_SIZE + (values.length + 3) / 4).order(ByteOrder.BIG_ENDIAN);
+            data.putLong(Tablebase.MAGIC).putInt(signature[0]).putInt(signature[1]).putInt(signature[2]).putInt(signature[3]);
+            for(int i = 0; i < values.length; i += 4) {
+                int b = 0;
+                for(int j = 0; j < 4 && i + j < values.length; j++) {
+                    b |= values[i + j] << (2 * j);
+                }
+                data.put((byte) b);
+            }
+            data.flip();
+            try(FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                while(data.hasRemaining()) {
+                    channel.write(data);
+                }
+            }
+        }
+    }
+
+    /** generates the positions after all legal moves of white in a position given by bitboards, without allocating anything. */
+    static class Successors {
+        private static final int MAX_SUCCESSORS = 256;
+        final long[] positions = new long[4 * MAX_SUCCESSORS]; // white men, white kings, black men and black kings of every successor
+        int count; // number of successors
+        private long wm, wk, bm, bk; // the position
+        private long empty; // empty fields while a capture is made
+        private int from; // begin field of the capturing piece
+        private int maxCaptures; // most pieces captured by a capture found so far
+
+        /** generates the successors of the position with white to move. */
+        void generate(long whiteMen, long whiteKings, long blackMen, long blackKings) {
+            wm = whiteMen;
+            wk = whiteKings;
+            bm = blackMen;
+            bk = blackKings;
+            count = 0;
+            maxCaptures = 0;
+            for(long s = wm | wk; s != 0; s &= s - 1) {
+                from = Long.numberOfTrailingZeros(s);
+                empty = ~(wm | wk | bm | bk) & ALL_FIELDS | bit(from);
+                captures(from, contains(wk, from), 0L, 0L, 0);
+            }
+            if(maxCaptures > 0) {
+                return;
+            }
+            long free = ~(wm | wk | bm | bk) & ALL_FIELDS;
+            for(long s = wm; s != 0; s &= s - 1) {
+                int f = Long.numberOfTrailingZeros(s);
+                for(int d = UP_LEFT; d <= UP_RIGHT; d++) {
+                    int to = NEIGHBOURS[f][d];
+                    if(contains(free, to)) {
+                        add(f, to, false, 0L);
+                    }
+                }
+            }
+            for(long s = wk; s != 0; s &= s - 1) {
+                int f = Long.numberOfTrailingZeros(s);
+                for(int d = 0; d < 4; d++) {
+                    int[] ray = RAYS[f][d];
+                    for(int i = 0; contains(free, ray[i]); i++) {
+                        add(f, ray[i], true, 0L);
+                    }
+                }
+            }
+        }
+
+        // continues a capture of the piece from field from that is now on square and has jumped the pieces in jumped
+        // removed are the fields that the move removes, which are the jumped pieces except for one quirk of the move generator of the game:
+        // when a king crosses its begin field on the way to a piece it captures, the begin field is recorded as captured instead of the piece,
+        // so that piece stays on the board
+        private void captures(int square, boolean king, long jumped, long removed, int length) {
+            long victims = (bm | bk) & ~jumped; // a captured piece stays on the board until the capture is finished, but can't be jumped again
+            boolean extended = false;
+            for(int d = 0; d < 4; d++) {
+                if(king) {
+                    int[] ray = RAYS[square][d];
+                    int i = 0;
+                    boolean crossesBegin = false;
+                    while(contains(empty, ray[i])) {
+                        crossesBegin |= ray[i] == from;
+                        i++;
+                    }
+                    if(!contains(victims, ray[i])) {
+                        continue;
+                    }
+                    long remove = crossesBegin ? bit(from) : bit(ray[i]);
+                    for(int j = i + 1; contains(empty, ray[j]); j++) {
+                        extended = true;
+                        captures(ray[j], true, jumped | bit(ray[i]), removed | remove, length + 1);
+                    }
+                } else {
+                    int victim = NEIGHBOURS[square][d];
+                    if(contains(victims, victim) && contains(empty, NEIGHBOURS[victim][d])) {
+                        extended = true;
+                        captures(NEIGHBOURS[victim][d], false, jumped | bit(victim), removed | bit(victim), length + 1);
+                    }
+                }
+            }
+            if(!extended && length > 0 && length >= maxCaptures) {
+                if(length > maxCaptures) { // only the captures of the most pieces are legal
+                    maxCaptures = length;
+                    count = 0;
+                }
+                add(from, square, king, removed);
+            }
+        }
+
+        // adds the position after moving the white piece from field from to field to and removing the captured black pieces
+        private void add(int from, int to, boolean king, long captured) {
+            if(count == MAX_SUCCESSORS) {
+                throw new IllegalStateException("too many moves");
+            }
+            boolean promotes = king || row(to) == 0;
+            positions[4 * count] = wm & ~bit(from) | (promotes ? 0L : bit(to));
+            positions[4 * count + 1] = wk & ~bit(from) | (promotes ? bit(to) : 0L);
+            positions[4 * count + 2] = bm & ~captured;
+            positions[4 * count + 3] = bk & ~captured;
+            count++;
+        }
+    }
+}
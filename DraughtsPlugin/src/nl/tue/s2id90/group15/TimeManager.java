@@ -0,0 +1,73 @@
+package nl.tue.s2id90.group15;
+
+import org10x10.dam.game.Move;
+
+/**
+ * Group 15 - Petar Galic & Filip Davidovic
+ */
+// decides how long the engine thinks about a move, so that the depth of the search is limited by the time instead of a fixed depth
+// - soft deadline: no new iteration of iterative deepening is started after it, because it would most likely not finish anyway
+// - hard deadline: the running iteration is aborted, the search checks the clock every CHECK_INTERVAL nodes
+// - when the best move has been the same for a number of iterations the soft deadline is brought forward
+// the timer of the GUI (stop()) remains the final safeguard, the hard deadline keeps a margin before it goes off
+// the margin is a fixed time rather than a fraction, because stopping does not get faster when the move time is short: after the
+// hard deadline the helpers, the solver and the ponderer are stopped and joined, and with more threads than processors the main
+// thread itself can notice the deadline late; the time all of that took is measured (moveReturned()) and kept free as well
+class TimeManager {
+    static final int CHECK_INTERVAL = 256; // number of nodes between two checks of the clock, a power of two
+    private static final double SOFT_DEADLINE = 0.4; // fraction of the move time after which no new iteration is started
+    private static final long MIN_MARGIN = 15000000L; // nanoseconds that the hard deadline keeps free at least before the end of the move time
+    private static final double MARGIN = 0.1; // fraction of the move time that the hard deadline keeps free at least
+    private static final double SHUTDOWN_DECAY = 0.9; // factor by which the measured stopping time shrinks every move, so that a hiccup is forgotten
+    private static final double MAX_SHUTDOWN = 0.25; // fraction of the move time that is kept free for stopping at most
+    private static final double STABLE_DEADLINE = 0.15; // soft deadline when the best move is stable
+    private static final int STABLE_ITERATIONS = 4; // number of iterations with the same best move after which it is considered stable
+
+    private final long moveTime; // time for one move in nanoseconds, 0 means that the time is not managed at all
+    private final long hardDeadline; // time after the start of a move at which the search is aborted, before shutdown is taken off
+    private long shutdown; // nanoseconds from the hard deadline until the move was returned, the largest of the last moves
+    private long start; // System.nanoTime() at the start of the current move
+    private Move lastBestMove; // best move of the last completed iteration
+    private int stableIterations; // number of iterations in a row that ended with lastBestMove
+
+    /** @param moveTime time available for one move in milliseconds, 0 to search until the depth limit or stop() */
+    TimeManager(int moveTime) {
+        this.moveTime = moveTime * 1000000L;
+        this.hardDeadline = this.moveTime - Math.max(MIN_MARGIN, (long) (MARGIN * this.moveTime));
+    }
+
+    /** starts the clock for a new move. */
+    void start() {
+        start = System.nanoTime();
+        lastBestMove = null;
+        stableIterations = 0;
+    }
+
+    /** @return whether or not the running search has to be aborted. */
+    boolean hardDeadlinePassed() {
+        return moveTime > 0 && System.nanoTime() - start >= hardDeadline - shutdown;
+    }
+
+    /** registers that the move has been returned, when it took longer than the hard deadline the extra time is kept free next time. */
+    void moveReturned() {
+        long late = System.nanoTime() - start - (hardDeadline - shutdown);
+        shutdown = Math.min(Math.max((long) (SHUTDOWN_DECAY * shutdown), late), (long) (MAX_SHUTDOWN * moveTime));
+    }
+
+    /** registers the best move of a completed iteration.
+     * @return whether or not there is enough time left to start the next iteration
+     */
+    boolean startNextIteration(Move bestMove) {
+        if(moveTime == 0) {
+            return true;
+        }
+        if(bestMove != null && lastBestMove != null && bestMove.equals(lastBestMove)) { // Move.equals doesn't accept null
+            stableIterations++;
+        } else {
+            stableIterations = 0;
+        }
+        lastBestMove = bestMove;
+        double deadline = stableIterations >= STABLE_ITERATIONS ? STABLE_DEADLINE : SOFT_DEADLINE;
+        return System.nanoTime() - start < (long) (deadline * moveTime);
+    }
+}
@@ -0,0 +1,138 @@
+package nl.tue.s2id90.group15;
+
+import java.util.Arrays;
+import java.util.List;
+import org10x10.dam.game.Move;
+
+/**
+ * Group 15 - Petar Galic & Filip Davidovic
+ */
+// fixed-size transposition table backed by a single preallocated long[]
+// the table is divided in buckets of two entries; every entry takes two longs: the verification key xor-ed with the packed data, and the packed data
+// the table is shared by all search threads without any locking: a reader recomputes key ^ data, so an entry of which the two
+// longs were written by different threads at the same time simply doesn't verify and is treated as a miss
+// - slot 0 of a bucket is depth-preferred: it is only overwritten by a deeper search or when it is left over from an earlier search (older generation)
+// - slot 1 of a bucket is always-replace: everything that does not fit in slot 0 ends up here
+// the packed data long looks as follows (from the least significant bit):
+// - bits  0-31: evaluation
+// - bits 32-39: depth at which the evaluation was computed
+// - bits 40-41: flag (HASH_EXACT, HASH_BETA or HASH_ALPHA), stored plus one so that a valid entry is never 0
+// - bits 42-53: begin field (6 bits) and end field (6 bits) of the best move (0 means there is no best move)
+// - bits 54-61: generation in which the entry was stored
+class TranspositionTable {
+    public static final int HASH_EXACT = 0; // flag that explains that the evaluation in this hash field is definite evaluation (no alpha/beta cut-offs)
+    public static final int HASH_BETA = 1; // flag that explains that there was a beta cut-off (evaluation is at least beta or higher)
+    public static final int HASH_ALPHA = 2; // flag that explains that there was an alpha cut-off (evaluation was not as high as alpha)
+    public static final long MISS = 0L; // value returned by probe when the table doesn't contain the key
+
+    private static final int LONGS_PER_BUCKET = 4; // two entries of two longs each
+    private static final int MAX_DEPTH = 0xFF;
+    private static final int GENERATION_MASK = 0xFF;
+
+    private final long[] table;
+    private final int bucketMask; // number of buckets - 1 (the number of buckets is a power of two)
+    private volatile int generation; // incremented at the start of each search, used to recognize entries of earlier moves and games
+
+    /** creates a transposition table that uses at most the given number of megabytes. */
+    TranspositionTable(int sizeInMB) {
+        if(sizeInMB < 1) {
+            throw new IllegalArgumentException("transposition table needs at least 1 MB");
+        }
+        long buckets = ((long) sizeInMB << 20) / (LONGS_PER_BUCKET * 8); // number of buckets that fit in the given size
+        int bucketCount = Integer.highestOneBit((int) Math.min(buckets, 1 << 26)); // round down to a power of two
+        this.table = new long[bucketCount * LONGS_PER_BUCKET];
+        this.bucketMask = bucketCount - 1;
+    }
+
+    /** marks the start of a new search; entries stored before this call become replaceable. */
+    void newSearch() {
+        generation = (generation + 1) & GENERATION_MASK;
+    }
+
+    /** removes all entries from the table. */
+    void clear() {
+        Arrays.fill(table, 0L);
+        generation = 0;
+    }
+
+    /** @return the packed data stored for the given key, or MISS if the table doesn't contain the key. */
+    long probe(long key) {
+        int index = bucketIndex(key);
+        long data = table[index + 1];
+        if(data != MISS && (table[index] ^ data) == key) { // depth-preferred slot
+            return data;
+        }
+        data = table[index + 3];
+        if(data != MISS && (table[index + 2] ^ data) == key) { // always-replace slot
+            return data;
+        }
+        return MISS;
+    }
+
+    /** stores the evaluation of the state with the given key.
+     * @param key zobrist key of the state
+     * @param depth remaining search depth at which the evaluation was computed
+     * @param evaluation evaluation of the state
+     * @param bestMove best move found in the state, or null
+     * @param flag one of HASH_EXACT, HASH_BETA and HASH_ALPHA
+     */
+    void store(long key, int depth, int evaluation, Move bestMove, int flag) {
+        long data = pack(depth, evaluation, bestMove, flag);
+        int index = bucketIndex(key);
+        long current = table[index + 1];
+        // the depth-preferred slot is replaced when it is empty, contains the same state, is from an earlier search or was searched less deep
+        if(current == MISS || (table[index] ^ current) == key || generation(current) != generation || getDepth(current) <= depth) {
+            table[index] = key ^ data;
+            table[index + 1] = data;
+        } else {
+            table[index + 2] = key ^ data;
+            table[index + 3] = data;
+        }
+    }
+
+    private int bucketIndex(long key) {
+        return ((int) (key ^ (key >>> 32)) & bucketMask) * LONGS_PER_BUCKET;
+    }
+
+    private long pack(int depth, int evaluation, Move bestMove, int flag) {
+        long move = bestMove == null ? 0 : (bestMove.getBeginField() << 6) | bestMove.getEndField();
+        return (evaluation & 0xFFFFFFFFL)
+                | ((long) Math.min(Math.max(depth, 0), MAX_DEPTH) << 32)
+                | ((long) (flag + 1) << 40)
+                | (move << 42)
+                | ((long) generation << 54);
+    }
+
+    private static int generation(long data) {
+        return (int) (data >>> 54) & GENERATION_MASK;
+    }
+
+    static int getEvaluation(long data) {
+        return (int) data;
+    }
+
+    static int getDepth(long data) {
+        return (int) (data >>> 32) & MAX_DEPTH;
+    }
+
+    static int getFlag(long data) {
+        return ((int) (data >>> 40) & 0x3) - 1;
+    }
+
+    /** @return the move in moves that matches the best move stored in data, or null if there is none.
+     * Captures with the same begin and end field but a different path can't be distinguished, the first one is returned.
+     */
+    static Move getBestMove(long data, List<Move> moves) {
+        int move = (int) (data >>> 42) & 0xFFF;
+        if(move == 0) {
+            return null;
+        }
+        for(int i = 0; i < moves.size(); i++) {
+            Move m = moves.get(i);
+            if(m.getBeginField() == (move >>> 6) && m.getEndField() == (move & 0x3F)) {
+                return m;
+            }
+        }
+        return null;
+    }
+}